@@ -0,0 +1,983 @@
+package editortrees;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.Stack;
+
+import editortrees.Node.Code;
+
+// An EditTree whose nodes are records in a NodeStore instead of separate Node
+// objects. A node is an int id, node 0 plays the part of NULL_NODE, and
+// deleted nodes go on a free list to be reused. By default the store is a
+// HeapNodeStore, whose primitive arrays hold no references, so the garbage
+// collector never has to trace a document, and a node takes 19 bytes of
+// array instead of the 40 of a Node object (a 12 byte header, the char, three
+// references, the rank and the balance reference, padded to 8). With an
+// OffHeapNodeStore the nodes are not on the heap at all.
+//
+// The algorithms are the same ones EditTree and Node use, written on ids.
+// Trees made by split() share their store with the tree they were split
+// from, so that splitting and concatenating them again moves no characters.
+// Each tree owns the nodes that are in it. A tree that is no longer needed
+// should be given back with release(), or its nodes stay taken for as long as
+// the store lives; discard(int, int) deletes a range without keeping it.
+// Like EditTree, it is a TextTree.
+
+public class ArrayEditTree implements TextTree<ArrayEditTree> {
+
+	static final int NIL = NodeStore.NIL;
+	static final byte SAME = 0, LEFT = 1, RIGHT = 2;
+	// the balance codes, indexed by the bytes above
+	private static final Code[] CODES = { Code.SAME, Code.LEFT, Code.RIGHT };
+	// how many characters writeTo copies out at a time
+	private static final int WRITE_CHUNK = 8192;
+
+	private final NodeStore nodes;
+	private int root = NIL;
+	private int size = 0;
+	private int numberOfRotation = 0;
+
+	/**
+	 * Construct an empty tree
+	 */
+	public ArrayEditTree() {
+		this(new HeapNodeStore(0));
+	}
+
+	/**
+	 * Construct an empty tree that keeps its nodes in store, for example an
+	 * OffHeapNodeStore.
+	 *
+	 * @param store
+	 */
+	public ArrayEditTree(NodeStore store) {
+		this.nodes = store;
+	}
+
+	/**
+	 * Create a tree whose toString is text, in O(N) time. Its nodes are laid
+	 * out in inorder, so neighbouring characters are next to each other in
+	 * memory.
+	 *
+	 * @param text
+	 */
+	public ArrayEditTree(CharSequence text) {
+		this(text, new HeapNodeStore(text.length()));
+	}
+
+	/**
+	 * Create a tree whose toString is text, in O(N) time, keeping its nodes in
+	 * store. Nodes on the store's free list are used first.
+	 *
+	 * @param text
+	 * @param store
+	 */
+	public ArrayEditTree(CharSequence text, NodeStore store) {
+		this.nodes = store;
+		this.root = this.build(text);
+		this.size = text.length();
+	}
+
+	/**
+	 * Make a copy of e, with the same shape, in a new HeapNodeStore.
+	 *
+	 * @param e
+	 */
+	public ArrayEditTree(ArrayEditTree e) {
+		this.nodes = new HeapNodeStore(e.size);
+		this.root = this.copy(e.nodes, e.root, NIL);
+		this.size = e.size;
+	}
+
+	/**
+	 * Same as Node.copy, from the node with id node in from into this tree's
+	 * store.
+	 */
+	private int copy(NodeStore from, int node, int parent) {
+		if (node == NIL) {
+			return NIL;
+		}
+		NodeStore nodes = this.nodes;
+		int copy = nodes.allocate(from.element(node));
+		nodes.setParent(copy, parent);
+		nodes.setRank(copy, from.rank(node));
+		nodes.setBalance(copy, from.balance(node));
+		nodes.setLeft(copy, this.copy(from, from.left(node), copy));
+		nodes.setRight(copy, this.copy(from, from.right(node), copy));
+		return copy;
+	}
+
+	private ArrayEditTree(NodeStore nodes, int root, int size) {
+		this.nodes = nodes;
+		this.root = root;
+		this.size = size;
+	}
+
+	/**
+	 * Builds the nodes of text in this tree's store.
+	 *
+	 * @return the root of the new nodes
+	 */
+	private int build(CharSequence text) {
+		// with nothing free, take one block so the nodes sit in inorder
+		int first = (this.nodes.freeCount() == 0) ? this.nodes.allocateBlock(text.length()) : NIL;
+		return this.build(text, first, 0, text.length() - 1);
+	}
+
+	/**
+	 * Same as EditTree.build, using the i-th node from first for character i,
+	 * or a node from allocate if first is NIL.
+	 */
+	private int build(CharSequence text, int first, int low, int high) {
+		if (low > high) {
+			return NIL;
+		}
+		int mid = (low + high) >>> 1;
+		int left = this.build(text, first, low, mid - 1);
+		int node = (first == NIL) ? this.nodes.allocate(text.charAt(mid)) : first + mid;
+		int right = this.build(text, first, mid + 1, high);
+		NodeStore nodes = this.nodes;
+		nodes.setElement(node, text.charAt(mid));
+		nodes.setLeft(node, left);
+		nodes.setRight(node, right);
+		nodes.setParent(node, NIL);
+		if (left != NIL) {
+			nodes.setParent(left, node);
+		}
+		if (right != NIL) {
+			nodes.setParent(right, node);
+		}
+		nodes.setRank(node, mid - low);
+		nodes.setBalance(node, (builtHeight(high - mid) > builtHeight(mid - low)) ? RIGHT : SAME);
+		return node;
+	}
+
+	private static int builtHeight(int size) {
+		return 31 - Integer.numberOfLeadingZeros(size);
+	}
+
+	/**
+	 * @return the number of characters in this tree
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return the height of this tree, found from the balance codes in
+	 *         O(log n) time
+	 */
+	public int height() {
+		return this.heightFromBalanceCodes(this.root);
+	}
+
+	int getRoot() {
+		return this.root;
+	}
+
+	NodeStore getNodes() {
+		return this.nodes;
+	}
+
+	/**
+	 * @return number of rotations since tree was created. A double rotation
+	 *         counts as two.
+	 */
+	public int totalRotationCount() {
+		return this.numberOfRotation;
+	}
+
+	/**
+	 * @param ch
+	 *            character to add to the end of this tree.
+	 */
+	public void add(char ch) {
+		this.add(ch, this.size);
+	}
+
+	/**
+	 * Same as EditTree.add(char, int).
+	 *
+	 * @param ch
+	 *            character to add
+	 * @param pos
+	 *            character added in this inorder position
+	 * @throws IndexOutOfBoundsException
+	 *             if pos is negative or too large for this tree
+	 */
+	public void add(char ch, int pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos > this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		int add = this.nodes.allocate(ch);
+		this.size++;
+		if (this.root == NIL) {
+			this.root = add;
+			return;
+		}
+		NodeStore nodes = this.nodes;
+		int current = this.root;
+		while (true) {
+			if (pos <= nodes.rank(current)) {
+				nodes.setRank(current, nodes.rank(current) + 1);
+				if (nodes.left(current) == NIL) {
+					nodes.setLeft(current, add);
+					break;
+				}
+				current = nodes.left(current);
+			} else {
+				pos = pos - nodes.rank(current) - 1;
+				if (nodes.right(current) == NIL) {
+					nodes.setRight(current, add);
+					break;
+				}
+				current = nodes.right(current);
+			}
+		}
+		nodes.setParent(add, current);
+		this.rebalanceAfterGrowth(add);
+		this.updateRoot();
+	}
+
+	/**
+	 * @param pos
+	 *            position in the tree
+	 * @return the character at that position
+	 * @throws IndexOutOfBoundsException
+	 */
+	public char get(int pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos >= this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		return this.nodes.element(this.nodeAt(pos));
+	}
+
+	private int nodeAt(int pos) {
+		NodeStore nodes = this.nodes;
+		int current = this.root;
+		while (pos != nodes.rank(current)) {
+			if (pos < nodes.rank(current)) {
+				current = nodes.left(current);
+			} else {
+				pos = pos - nodes.rank(current) - 1;
+				current = nodes.right(current);
+			}
+		}
+		return current;
+	}
+
+	private int successor(int node) {
+		NodeStore nodes = this.nodes;
+		if (nodes.right(node) != NIL) {
+			node = nodes.right(node);
+			while (nodes.left(node) != NIL) {
+				node = nodes.left(node);
+			}
+			return node;
+		}
+		while (nodes.parent(node) != NIL && nodes.right(nodes.parent(node)) == node) {
+			node = nodes.parent(node);
+		}
+		return nodes.parent(node);
+	}
+
+	/**
+	 * Same as EditTree.get(int, int).
+	 *
+	 * @param pos
+	 *            location of the beginning of the string to retrieve
+	 * @param length
+	 *            length of the string to retrieve
+	 * @return string of length that starts in position pos
+	 * @throws IndexOutOfBoundsException
+	 *             unless both pos and pos+length-1 are legitimate indexes
+	 *             within this tree.
+	 */
+	public String get(int pos, int length) throws IndexOutOfBoundsException {
+		if (pos < 0 || length < 0 || length > this.size - pos) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (length == 0) {
+			return "";
+		}
+		char[] result = new char[length];
+		this.copy(this.nodeAt(pos), result, length);
+		return new String(result);
+	}
+
+	/**
+	 * Copies count characters into chunk, going in order from node.
+	 *
+	 * @return the node after the last one copied
+	 */
+	private int copy(int node, char[] chunk, int count) {
+		for (int i = 0; i < count; i++) {
+			chunk[i] = this.nodes.element(node);
+			node = this.successor(node);
+		}
+		return node;
+	}
+
+	/**
+	 * @return the string produced by an inorder traversal of this tree
+	 */
+	@Override
+	public String toString() {
+		return this.get(0, this.size);
+	}
+
+	/**
+	 * Same as size().
+	 */
+	@Override
+	public int length() {
+		return this.size;
+	}
+
+	/**
+	 * Same as get(int).
+	 */
+	@Override
+	public char charAt(int index) throws IndexOutOfBoundsException {
+		return this.get(index);
+	}
+
+	/**
+	 * @return a copy of positions start .. end - 1 of this tree, made like
+	 *         get(int, int)
+	 * @throws IndexOutOfBoundsException
+	 *             unless 0 <= start <= end <= size()
+	 */
+	@Override
+	public CharSequence subSequence(int start, int end) throws IndexOutOfBoundsException {
+		if (start < 0 || start > end || end > this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		return this.get(start, end - start);
+	}
+
+	/**
+	 * Same as EditTree.writeTo(Appendable), WRITE_CHUNK characters at a time.
+	 *
+	 * @param out
+	 * @throws IOException
+	 *             if out throws one
+	 */
+	public void writeTo(Appendable out) throws IOException {
+		if (this.size == 0) {
+			return;
+		}
+		char[] chunk = new char[Math.min(WRITE_CHUNK, this.size)];
+		CharBuffer wrapped = CharBuffer.wrap(chunk);
+		int current = this.nodeAt(0);
+		for (int written = 0; written < this.size; written += chunk.length) {
+			int count = Math.min(chunk.length, this.size - written);
+			current = this.copy(current, chunk, count);
+			if (out instanceof Writer) {
+				((Writer) out).write(chunk, 0, count);
+			} else {
+				out.append(wrapped, 0, count);
+			}
+		}
+	}
+
+	/**
+	 * Same as EditTree.toDebugString.
+	 *
+	 * @return the elements, ranks and balance codes of the nodes in preorder
+	 */
+	public String toDebugString() {
+		StringBuilder result = new StringBuilder("[");
+		if (this.root != NIL) {
+			NodeStore nodes = this.nodes;
+			Stack<Integer> stack = new Stack<Integer>();
+			stack.push(this.root);
+			while (!stack.empty()) {
+				int node = stack.pop();
+				if (result.length() > 1) {
+					result.append(", ");
+				}
+				result.append(nodes.element(node)).append(nodes.rank(node)).append(CODES[nodes.balance(node)]);
+				if (nodes.right(node) != NIL) {
+					stack.push(nodes.right(node));
+				}
+				if (nodes.left(node) != NIL) {
+					stack.push(nodes.left(node));
+				}
+			}
+		}
+		return result.append(']').toString();
+	}
+
+	/**
+	 * Same as EditTree.delete(int). The node goes on the free list.
+	 *
+	 * @param pos
+	 *            position of character to delete from this tree
+	 * @return the character that is deleted
+	 * @throws IndexOutOfBoundsException
+	 */
+	public char delete(int pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos >= this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		int removed = this.remove(pos);
+		this.nodes.release(removed);
+		return this.nodes.element(removed);
+	}
+
+	/**
+	 * Same as EditTree.remove. The caller frees or reuses the node.
+	 */
+	private int remove(int pos) {
+		NodeStore nodes = this.nodes;
+		int removed = this.root;
+		while (pos != nodes.rank(removed)) {
+			if (pos < nodes.rank(removed)) {
+				nodes.setRank(removed, nodes.rank(removed) - 1);
+				removed = nodes.left(removed);
+			} else {
+				pos = pos - nodes.rank(removed) - 1;
+				removed = nodes.right(removed);
+			}
+		}
+		int parent;
+		boolean fromLeft;
+		if (nodes.left(removed) != NIL && nodes.right(removed) != NIL) {
+			int successor = nodes.right(removed);
+			if (nodes.left(successor) == NIL) {
+				parent = successor;
+				fromLeft = false;
+			} else {
+				while (nodes.left(successor) != NIL) {
+					nodes.setRank(successor, nodes.rank(successor) - 1);
+					successor = nodes.left(successor);
+				}
+				parent = nodes.parent(successor);
+				fromLeft = true;
+				nodes.setLeft(parent, nodes.right(successor));
+				if (nodes.right(successor) != NIL) {
+					nodes.setParent(nodes.right(successor), parent);
+				}
+				nodes.setRight(successor, nodes.right(removed));
+				nodes.setParent(nodes.right(successor), successor);
+			}
+			nodes.setLeft(successor, nodes.left(removed));
+			nodes.setParent(nodes.left(successor), successor);
+			nodes.setRank(successor, nodes.rank(removed));
+			nodes.setBalance(successor, nodes.balance(removed));
+			this.replaceChild(nodes.parent(removed), removed, successor);
+			if (removed == this.root) {
+				this.root = successor;
+			}
+		} else {
+			int child = nodes.left(removed);
+			if (child == NIL) {
+				child = nodes.right(removed);
+			}
+			parent = nodes.parent(removed);
+			fromLeft = parent != NIL && nodes.left(parent) == removed;
+			this.replaceChild(parent, removed, child);
+			if (removed == this.root) {
+				this.root = child;
+			}
+		}
+		this.size--;
+		this.rebalanceAfterDelete(parent, fromLeft);
+		this.updateRoot();
+		return removed;
+	}
+
+	/**
+	 * Same as EditTree.concatenate. If other does not share this tree's
+	 * NodeStore, its characters are first copied into it in O(M) time, and
+	 * its nodes go back on the free list of its own store.
+	 *
+	 * @param other
+	 * @throws IllegalArgumentException
+	 *             if this == other
+	 */
+	public void concatenate(ArrayEditTree other) throws IllegalArgumentException {
+		if (this == other) {
+			throw new IllegalArgumentException();
+		}
+		this.numberOfRotation += other.numberOfRotation;
+		other.numberOfRotation = 0;
+		if (other.root == NIL) {
+			return;
+		}
+		if (other.nodes != this.nodes) {
+			String text = other.toString();
+			other.release();
+			other = new ArrayEditTree(this.nodes, this.build(text), text.length());
+		}
+		int size = this.size;
+		int otherSize = other.size;
+		if (this.root == NIL) {
+			this.root = other.root;
+		} else {
+			int pivot = other.remove(0);
+			this.numberOfRotation += other.numberOfRotation;
+			this.root = new Splitter().join(this.root, this.heightFromBalanceCodes(this.root), size, pivot,
+					other.root, this.heightFromBalanceCodes(other.root));
+		}
+		this.size = size + otherSize;
+		other.root = NIL;
+		other.size = 0;
+		other.numberOfRotation = 0;
+	}
+
+	/**
+	 * Same as EditTree.insert, in O(k + log N) time for k characters: the
+	 * text is built on its own in this tree's store, this tree is split at
+	 * pos, and the pieces are concatenated back together.
+	 *
+	 * @param text
+	 *            characters to add
+	 * @param pos
+	 *            inorder position of the first added character
+	 * @throws IndexOutOfBoundsException
+	 *             if pos is negative or too large for this tree
+	 */
+	public void insert(CharSequence text, int pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos > this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (text.length() == 0) {
+			return;
+		}
+		ArrayEditTree right = this.split(pos);
+		this.concatenate(new ArrayEditTree(text, this.nodes));
+		this.concatenate(right);
+	}
+
+	/**
+	 * Same as EditTree.delete(int, int), in O(log N) time. The range is split
+	 * out of this tree and the two outside pieces are concatenated again. The
+	 * returned tree shares this tree's NodeStore, like the ones split makes,
+	 * and its nodes stay taken until it is released.
+	 *
+	 * @param start
+	 *            position of beginning of string to delete
+	 * @param length
+	 *            length of string to delete
+	 * @return a tree containing the deleted string
+	 * @throws IndexOutOfBoundsException
+	 *             unless both start and start+length-1 are in range for this
+	 *             tree.
+	 */
+	public ArrayEditTree delete(int start, int length) throws IndexOutOfBoundsException {
+		if (start < 0 || length < 0 || length > this.size - start) {
+			throw new IndexOutOfBoundsException(
+					(start < 0 || length < 0) ? "negative argument to delete" : "delete range extends past end of string");
+		}
+		ArrayEditTree removed = this.split(start);
+		this.concatenate(removed.split(length));
+		return removed;
+	}
+
+	/**
+	 * Like delete(int, int), but the removed nodes go straight back on the
+	 * free list instead of being handed back in a new tree. O(log N + length)
+	 * time.
+	 *
+	 * @param start
+	 *            position of beginning of string to delete
+	 * @param length
+	 *            length of string to delete
+	 * @throws IndexOutOfBoundsException
+	 *             unless both start and start+length-1 are in range for this
+	 *             tree.
+	 */
+	public void discard(int start, int length) throws IndexOutOfBoundsException {
+		this.delete(start, length).release();
+	}
+
+	/**
+	 * Puts all of this tree's nodes back on its NodeStore's free list, in O(n)
+	 * time, and leaves this tree empty. Other trees sharing the store reuse
+	 * them for their next nodes.
+	 */
+	public void release() {
+		this.nodes.releaseTree(this.root);
+		this.root = NIL;
+		this.size = 0;
+	}
+
+	/**
+	 * Same as EditTree.split. The new tree shares this tree's NodeStore and
+	 * owns the nodes moved into it.
+	 *
+	 * @param pos
+	 *            where to split this tree
+	 * @return a new tree containing all of the elements of this tree whose
+	 *         positions are >= position. Their nodes are removed from this
+	 *         tree.
+	 * @throws IndexOutOfBoundsException
+	 */
+	public ArrayEditTree split(int pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos > this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		Splitter splitter = new Splitter();
+		splitter.split(this.root, this.heightFromBalanceCodes(this.root), pos);
+		int rightSize = this.size - pos;
+		this.root = splitter.left;
+		this.size = pos;
+		return new ArrayEditTree(this.nodes, splitter.right, rightSize);
+	}
+
+	private int heightFromBalanceCodes(int node) {
+		NodeStore nodes = this.nodes;
+		int height = -1;
+		while (node != NIL) {
+			height++;
+			node = (nodes.balance(node) == LEFT) ? nodes.left(node) : nodes.right(node);
+		}
+		return height;
+	}
+
+	// Rotations: Node's four rotations on ids.
+
+	private int singleLeft(int parent) {
+		NodeStore nodes = this.nodes;
+		int child = nodes.right(parent);
+		nodes.setRank(child, nodes.rank(child) + nodes.rank(parent) + 1);
+		nodes.setRight(parent, nodes.left(child));
+		if (nodes.right(parent) != NIL) {
+			nodes.setParent(nodes.right(parent), parent);
+		}
+		nodes.setLeft(child, parent);
+		nodes.setParent(parent, child);
+		nodes.setBalance(child, SAME);
+		nodes.setBalance(parent, SAME);
+		this.numberOfRotation++;
+		return child;
+	}
+
+	private int singleRight(int parent) {
+		NodeStore nodes = this.nodes;
+		int child = nodes.left(parent);
+		nodes.setRank(parent, nodes.rank(parent) - nodes.rank(child) - 1);
+		nodes.setLeft(parent, nodes.right(child));
+		if (nodes.left(parent) != NIL) {
+			nodes.setParent(nodes.left(parent), parent);
+		}
+		nodes.setRight(child, parent);
+		nodes.setParent(parent, child);
+		nodes.setBalance(child, SAME);
+		nodes.setBalance(parent, SAME);
+		this.numberOfRotation++;
+		return child;
+	}
+
+	private int doubleLeft(int a) {
+		NodeStore nodes = this.nodes;
+		int c = nodes.right(a);
+		int b = nodes.left(c);
+		if (nodes.balance(b) == LEFT) {
+			nodes.setBalance(a, SAME);
+			nodes.setBalance(c, RIGHT);
+		} else if (nodes.balance(b) == RIGHT) {
+			nodes.setBalance(a, LEFT);
+			nodes.setBalance(c, SAME);
+		} else {
+			nodes.setBalance(a, SAME);
+			nodes.setBalance(c, SAME);
+		}
+		nodes.setRight(a, nodes.left(b));
+		if (nodes.right(a) != NIL) {
+			nodes.setParent(nodes.right(a), a);
+		}
+		nodes.setLeft(c, nodes.right(b));
+		if (nodes.left(c) != NIL) {
+			nodes.setParent(nodes.left(c), c);
+		}
+		nodes.setLeft(b, a);
+		nodes.setParent(a, b);
+		nodes.setRight(b, c);
+		nodes.setParent(c, b);
+		nodes.setRank(c, nodes.rank(c) - nodes.rank(b) - 1);
+		nodes.setRank(b, nodes.rank(b) + nodes.rank(a) + 1);
+		nodes.setBalance(b, SAME);
+		this.numberOfRotation += 2;
+		return b;
+	}
+
+	private int doubleRight(int a) {
+		NodeStore nodes = this.nodes;
+		int c = nodes.left(a);
+		int b = nodes.right(c);
+		if (nodes.balance(b) == LEFT) {
+			nodes.setBalance(c, SAME);
+			nodes.setBalance(a, RIGHT);
+		} else if (nodes.balance(b) == RIGHT) {
+			nodes.setBalance(c, LEFT);
+			nodes.setBalance(a, SAME);
+		} else {
+			nodes.setBalance(a, SAME);
+			nodes.setBalance(c, SAME);
+		}
+		nodes.setLeft(a, nodes.right(b));
+		if (nodes.left(a) != NIL) {
+			nodes.setParent(nodes.left(a), a);
+		}
+		nodes.setRight(c, nodes.left(b));
+		if (nodes.right(c) != NIL) {
+			nodes.setParent(nodes.right(c), c);
+		}
+		nodes.setRight(b, a);
+		nodes.setParent(a, b);
+		nodes.setLeft(b, c);
+		nodes.setParent(c, b);
+		nodes.setRank(a, nodes.rank(a) - nodes.rank(c) - nodes.rank(b) - 2);
+		nodes.setRank(b, nodes.rank(b) + nodes.rank(c) + 1);
+		nodes.setBalance(b, SAME);
+		this.numberOfRotation += 2;
+		return b;
+	}
+
+	/**
+	 * Same as EditTree.rebalanceAfterGrowth.
+	 *
+	 * @return true if the top of the tree got taller
+	 */
+	private boolean rebalanceAfterGrowth(int child) {
+		NodeStore nodes = this.nodes;
+		int parent = nodes.parent(child);
+		while (parent != NIL) {
+			int grandParent = nodes.parent(parent);
+			if (child == nodes.left(parent)) {
+				if (nodes.balance(parent) == RIGHT) {
+					nodes.setBalance(parent, SAME);
+					return false;
+				} else if (nodes.balance(parent) == SAME) {
+					nodes.setBalance(parent, LEFT);
+				} else if (nodes.balance(child) == LEFT) {
+					this.replaceChild(grandParent, parent, this.singleRight(parent));
+					return false;
+				} else if (nodes.balance(child) == RIGHT) {
+					this.replaceChild(grandParent, parent, this.doubleRight(parent));
+					return false;
+				} else {
+					this.replaceChild(grandParent, parent, this.singleRight(parent));
+					nodes.setBalance(parent, LEFT);
+					nodes.setBalance(child, RIGHT);
+					parent = child;
+				}
+			} else {
+				if (nodes.balance(parent) == LEFT) {
+					nodes.setBalance(parent, SAME);
+					return false;
+				} else if (nodes.balance(parent) == SAME) {
+					nodes.setBalance(parent, RIGHT);
+				} else if (nodes.balance(child) == RIGHT) {
+					this.replaceChild(grandParent, parent, this.singleLeft(parent));
+					return false;
+				} else if (nodes.balance(child) == LEFT) {
+					this.replaceChild(grandParent, parent, this.doubleLeft(parent));
+					return false;
+				} else {
+					this.replaceChild(grandParent, parent, this.singleLeft(parent));
+					nodes.setBalance(parent, RIGHT);
+					nodes.setBalance(child, LEFT);
+					parent = child;
+				}
+			}
+			child = parent;
+			parent = grandParent;
+		}
+		return true;
+	}
+
+	/**
+	 * Same as EditTree.rebalanceAfterDelete.
+	 *
+	 * @return true if the top of the tree got shorter
+	 */
+	private boolean rebalanceAfterDelete(int parent, boolean fromLeft) {
+		NodeStore nodes = this.nodes;
+		while (parent != NIL) {
+			int grandParent = nodes.parent(parent);
+			boolean parentFromLeft = grandParent != NIL && nodes.left(grandParent) == parent;
+			if (fromLeft) {
+				if (nodes.balance(parent) == SAME) {
+					nodes.setBalance(parent, RIGHT);
+					return false;
+				} else if (nodes.balance(parent) == LEFT) {
+					nodes.setBalance(parent, SAME);
+				} else {
+					int sibling = nodes.right(parent);
+					if (nodes.balance(sibling) == LEFT) {
+						this.replaceChild(grandParent, parent, this.doubleLeft(parent));
+					} else if (nodes.balance(sibling) == RIGHT) {
+						this.replaceChild(grandParent, parent, this.singleLeft(parent));
+					} else {
+						this.replaceChild(grandParent, parent, this.singleLeft(parent));
+						nodes.setBalance(sibling, LEFT);
+						nodes.setBalance(parent, RIGHT);
+						return false;
+					}
+				}
+			} else {
+				if (nodes.balance(parent) == SAME) {
+					nodes.setBalance(parent, LEFT);
+					return false;
+				} else if (nodes.balance(parent) == RIGHT) {
+					nodes.setBalance(parent, SAME);
+				} else {
+					int sibling = nodes.left(parent);
+					if (nodes.balance(sibling) == RIGHT) {
+						this.replaceChild(grandParent, parent, this.doubleRight(parent));
+					} else if (nodes.balance(sibling) == LEFT) {
+						this.replaceChild(grandParent, parent, this.singleRight(parent));
+					} else {
+						this.replaceChild(grandParent, parent, this.singleRight(parent));
+						nodes.setBalance(sibling, RIGHT);
+						nodes.setBalance(parent, LEFT);
+						return false;
+					}
+				}
+			}
+			parent = grandParent;
+			fromLeft = parentFromLeft;
+		}
+		return true;
+	}
+
+	private void replaceChild(int parent, int oldChild, int newChild) {
+		NodeStore nodes = this.nodes;
+		if (newChild != NIL) {
+			nodes.setParent(newChild, parent);
+		}
+		if (parent == NIL) {
+			return;
+		} else if (nodes.left(parent) == oldChild) {
+			nodes.setLeft(parent, newChild);
+		} else {
+			nodes.setRight(parent, newChild);
+		}
+	}
+
+	private void updateRoot() {
+		NodeStore nodes = this.nodes;
+		if (this.root != NIL && nodes.parent(this.root) != NIL) {
+			this.root = nodes.parent(this.root);
+		}
+	}
+
+	/**
+	 * Same as EditTree's Splitter, on ids.
+	 */
+	private class Splitter {
+		private int left = NIL;
+		private int leftHeight = -1;
+		private int right = NIL;
+		private int rightHeight = -1;
+		private int height;
+
+		public void split(int node, int height, int pos) {
+			if (node == NIL) {
+				this.left = NIL;
+				this.leftHeight = -1;
+				this.right = NIL;
+				this.rightHeight = -1;
+				return;
+			}
+			NodeStore nodes = ArrayEditTree.this.nodes;
+			int leftChild = nodes.left(node);
+			int rightChild = nodes.right(node);
+			int leftChildHeight = height - ((nodes.balance(node) == RIGHT) ? 2 : 1);
+			int rightChildHeight = height - ((nodes.balance(node) == LEFT) ? 2 : 1);
+			int leftChildSize = nodes.rank(node);
+			if (leftChild != NIL) {
+				nodes.setParent(leftChild, NIL);
+			}
+			if (rightChild != NIL) {
+				nodes.setParent(rightChild, NIL);
+			}
+			if (pos <= leftChildSize) {
+				if (pos == leftChildSize) {
+					this.left = leftChild;
+					this.leftHeight = leftChildHeight;
+					this.right = NIL;
+					this.rightHeight = -1;
+				} else {
+					this.split(leftChild, leftChildHeight, pos);
+				}
+				this.right = this.join(this.right, this.rightHeight, leftChildSize - pos, node, rightChild,
+						rightChildHeight);
+				this.rightHeight = this.height;
+			} else {
+				this.split(rightChild, rightChildHeight, pos - leftChildSize - 1);
+				this.left = this.join(leftChild, leftChildHeight, leftChildSize, node, this.left, this.leftHeight);
+				this.leftHeight = this.height;
+			}
+		}
+
+		public int join(int left, int leftHeight, int leftSize, int pivot, int right, int rightHeight) {
+			NodeStore nodes = ArrayEditTree.this.nodes;
+			if (leftHeight > rightHeight + 1) {
+				int parent = NIL;
+				int spine = left;
+				int spineHeight = leftHeight;
+				int spineSize = leftSize;
+				while (spineHeight > rightHeight + 1) {
+					spineSize = spineSize - nodes.rank(spine) - 1;
+					spineHeight -= (nodes.balance(spine) == LEFT) ? 2 : 1;
+					parent = spine;
+					spine = nodes.right(spine);
+				}
+				this.link(pivot, spine, spineSize, right);
+				nodes.setBalance(pivot, (spineHeight == rightHeight) ? SAME : LEFT);
+				nodes.setRight(parent, pivot);
+				nodes.setParent(pivot, parent);
+				boolean grew = ArrayEditTree.this.rebalanceAfterGrowth(pivot);
+				this.height = grew ? leftHeight + 1 : leftHeight;
+				return (nodes.parent(left) == NIL) ? left : nodes.parent(left);
+			} else if (rightHeight > leftHeight + 1) {
+				int parent = NIL;
+				int spine = right;
+				int spineHeight = rightHeight;
+				while (spineHeight > leftHeight + 1) {
+					nodes.setRank(spine, nodes.rank(spine) + leftSize + 1);
+					spineHeight -= (nodes.balance(spine) == RIGHT) ? 2 : 1;
+					parent = spine;
+					spine = nodes.left(spine);
+				}
+				this.link(pivot, left, leftSize, spine);
+				nodes.setBalance(pivot, (spineHeight == leftHeight) ? SAME : RIGHT);
+				nodes.setLeft(parent, pivot);
+				nodes.setParent(pivot, parent);
+				boolean grew = ArrayEditTree.this.rebalanceAfterGrowth(pivot);
+				this.height = grew ? rightHeight + 1 : rightHeight;
+				return (nodes.parent(right) == NIL) ? right : nodes.parent(right);
+			}
+			this.link(pivot, left, leftSize, right);
+			nodes.setParent(pivot, NIL);
+			if (leftHeight > rightHeight) {
+				nodes.setBalance(pivot, LEFT);
+			} else if (rightHeight > leftHeight) {
+				nodes.setBalance(pivot, RIGHT);
+			} else {
+				nodes.setBalance(pivot, SAME);
+			}
+			this.height = Math.max(leftHeight, rightHeight) + 1;
+			return pivot;
+		}
+
+		private void link(int node, int left, int leftSize, int right) {
+			NodeStore nodes = ArrayEditTree.this.nodes;
+			nodes.setLeft(node, left);
+			nodes.setRight(node, right);
+			nodes.setRank(node, leftSize);
+			if (left != NIL) {
+				nodes.setParent(left, node);
+			}
+			if (right != NIL) {
+				nodes.setParent(right, node);
+			}
+		}
+	}
+}
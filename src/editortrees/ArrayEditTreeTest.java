@@ -0,0 +1,298 @@
+package editortrees;
+
+import static editortrees.TreeChecks.checkTree;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for ArrayEditTree. Its algorithms are EditTree's, so these check
+ * that the index version gives the same text and keeps the same invariants.
+ */
+public class ArrayEditTreeTest {
+
+	@Test
+	public void testAddAndGet() {
+		ArrayEditTree t = new ArrayEditTree();
+		assertEquals("", t.toString());
+		assertEquals(-1, t.height());
+		t.add('b');
+		t.add('c'); // no rotation
+		t.add('a', 0);
+		t.add('d');
+		t.add('e'); // single left rotation
+		assertEquals("abcde", t.toString());
+		assertEquals(1, t.totalRotationCount());
+		assertEquals(2, t.height());
+		for (int i = 0; i < 5; i++) {
+			assertEquals("abcde".charAt(i), t.get(i));
+		}
+		assertEquals("bcd", t.get(1, 3));
+		assertEquals("[b1\\, a0=, d1=, c0=, e0=]", t.toDebugString());
+		try {
+			t.get(5);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		try {
+			t.add('x', -1);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+	}
+
+	@Test
+	public void testSameRotationsAsEditTree() {
+		// EditTree and ArrayEditTree run the same rotations, so they should
+		// count the same number of them for the same edits.
+		Random random = new Random(230);
+		EditTree expected = new EditTree();
+		ArrayEditTree t = new ArrayEditTree();
+		for (int i = 0; i < 2000; i++) {
+			if (t.size() > 0 && random.nextInt(3) == 0) {
+				int pos = random.nextInt(t.size());
+				assertEquals(expected.delete(pos), t.delete(pos));
+			} else {
+				int pos = random.nextInt(t.size() + 1);
+				char ch = (char) ('a' + random.nextInt(26));
+				expected.add(ch, pos);
+				t.add(ch, pos);
+			}
+		}
+		assertEquals(expected.toString(), t.toString());
+		assertEquals(expected.size(), t.size());
+		assertEquals(expected.height(), t.height());
+		assertEquals(expected.totalRotationCount(), t.totalRotationCount());
+		checkTree(t);
+	}
+
+	@Test
+	public void testFreedNodesAreReused() {
+		ArrayEditTree t = new ArrayEditTree("abcdefghij");
+		for (int i = 0; i < 1000; i++) {
+			t.add((char) ('a' + i % 26), 5);
+			t.delete(5);
+		}
+		assertEquals("abcdefghij", t.toString());
+		t.delete(0);
+		t.delete(8);
+		assertEquals("bcdefghi", t.toString());
+	}
+
+	@Test
+	public void testDeletedRangesAreReused() {
+		HeapNodeStore store = new HeapNodeStore(0);
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			text.append((char) ('a' + i % 26));
+		}
+		ArrayEditTree t = new ArrayEditTree(text, store);
+		long memory = store.memoryUsed();
+		Random random = new Random(230);
+		for (int i = 0; i < 3000; i++) {
+			int start = random.nextInt(t.size());
+			int length = random.nextInt(Math.min(100, t.size() - start) + 1);
+			if (i % 2 == 0) {
+				t.discard(start, length);
+			} else {
+				ArrayEditTree removed = t.delete(start, length);
+				removed.release();
+				assertEquals(0, removed.size());
+			}
+			t.insert(text.substring(0, length), random.nextInt(t.size() + 1));
+			// the inserted nodes all come off the free list
+			assertEquals(200, store.nodesUsed());
+			assertEquals(0, store.freeCount());
+		}
+		assertEquals(memory, store.memoryUsed());
+		checkTree(t);
+
+		// a tree from another store gives its nodes back to that store
+		HeapNodeStore otherStore = new HeapNodeStore(0);
+		ArrayEditTree other = new ArrayEditTree("defgh", otherStore);
+		t.concatenate(other);
+		assertEquals(5, otherStore.freeCount());
+		assertEquals(store.nodesUsed(), t.size() + store.freeCount());
+		t.release();
+		assertEquals("", t.toString());
+		assertEquals(store.nodesUsed(), store.freeCount());
+	}
+
+	@Test
+	public void testSplitAndConcatenate() {
+		String text = "abcdefghijklmnopqrstuvwxyz";
+		for (int pos = 0; pos <= text.length(); pos++) {
+			ArrayEditTree t = new ArrayEditTree(text);
+			ArrayEditTree right = t.split(pos);
+			assertEquals(text.substring(0, pos), t.toString());
+			assertEquals(text.substring(pos), right.toString());
+			checkTree(right);
+			// the two halves share their arrays, and can both still be edited
+			right.add('!', 0);
+			t.add('?');
+			assertEquals('!', right.delete(0));
+			assertEquals('?', t.delete(pos));
+
+			t.concatenate(right);
+			assertEquals(text, t.toString());
+			assertEquals("", right.toString());
+			checkTree(t);
+		}
+
+		// trees with their own arrays
+		ArrayEditTree t = new ArrayEditTree("abc");
+		ArrayEditTree other = new ArrayEditTree("defgh");
+		t.concatenate(other);
+		assertEquals("abcdefgh", t.toString());
+		assertEquals(0, other.size());
+		other.add('x');
+		assertEquals("x", other.toString());
+		try {
+			t.concatenate(t);
+			fail("Did not throw IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// success
+		}
+	}
+
+	@Test
+	public void testOffHeapStore() {
+		OffHeapNodeStore store = new OffHeapNodeStore();
+		ArrayEditTree t = new ArrayEditTree("abcdefghijklmnopqrstuvwxyz", store);
+		ArrayEditTree other = new ArrayEditTree(store);
+		other.add('!');
+		t.add('?', 13);
+		assertEquals('a', t.delete(0));
+		assertEquals("bcdefghijklm?nopqrstuvwxyz", t.toString());
+		ArrayEditTree right = t.split(12);
+		assertEquals("nopqrstuvwxyz", right.toString().substring(1));
+		right.concatenate(other);
+		t.concatenate(right);
+		assertEquals("bcdefghijklm?nopqrstuvwxyz!", t.toString());
+		assertTrue(store.memoryUsed() > 0);
+
+		// enough nodes for several pages
+		ArrayEditTree big = new ArrayEditTree(store);
+		StringBuilder expected = new StringBuilder();
+		Random random = new Random(230);
+		for (int i = 0; i < 200000; i++) {
+			int pos = random.nextInt(expected.length() + 1);
+			char ch = (char) ('a' + i % 26);
+			big.add(ch, pos);
+			expected.insert(pos, ch);
+		}
+		assertEquals(expected.toString(), big.toString());
+		checkTree(big);
+
+		store.close();
+		assertEquals(0, store.memoryUsed());
+		try {
+			t.get(0);
+			fail("Did not throw IllegalStateException");
+		} catch (IllegalStateException e) {
+			// success
+		}
+		store.close();
+	}
+
+	@Test
+	public void testInsertDeleteAndCopy() {
+		ArrayEditTree t = new ArrayEditTree("abcdefghij");
+		t.insert("XYZ", 3);
+		assertEquals("abcXYZdefghij", t.toString());
+		t.insert("", 0);
+		t.insert("!", 13);
+		assertEquals("abcXYZdefghij!", t.toString());
+		ArrayEditTree removed = t.delete(3, 3);
+		assertEquals("XYZ", removed.toString());
+		assertEquals("abcdefghij!", t.toString());
+		assertEquals("", t.delete(4, 0).toString());
+		try {
+			t.delete(5, 7);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		try {
+			t.insert("x", 12);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+
+		// the same edits as EditTree, checked against it
+		Random random = new Random(230);
+		EditTree expected = new EditTree();
+		ArrayEditTree big = new ArrayEditTree();
+		for (int i = 0; i < 2000; i++) {
+			int pos = random.nextInt(big.size() + 1);
+			if (random.nextBoolean()) {
+				String text = "chunk" + i;
+				expected.insert(text, pos);
+				big.insert(text, pos);
+			} else {
+				int length = random.nextInt(big.size() - pos + 1);
+				assertEquals(expected.delete(pos, length).toString(), big.delete(pos, length).toString());
+			}
+			assertEquals(expected.size(), big.size());
+		}
+		assertEquals(expected.toString(), big.toString());
+		checkTree(big);
+
+		ArrayEditTree copy = new ArrayEditTree(big);
+		assertEquals(big.toString(), copy.toString());
+		assertEquals(big.height(), copy.height());
+		copy.add('x', 0);
+		assertEquals(expected.toString(), big.toString());
+		assertEquals("x" + expected.toString(), copy.toString());
+	}
+
+	@Test
+	public void testOffHeapStoreOnlyTakesPagesItNeeds() {
+		// pages hold 64K nodes of 20 bytes, and node 0 is never used
+		long pageBytes = 65536 * 20;
+		OffHeapNodeStore store = new OffHeapNodeStore();
+		ArrayEditTree t = new ArrayEditTree(store);
+		for (int i = 0; i < 33 * 65536; i++) {
+			t.add('a');
+		}
+		assertEquals(34 * pageBytes, store.memoryUsed());
+		// one more page, not twice as many
+		for (int i = 0; i < 65536; i++) {
+			t.add('b');
+		}
+		assertEquals(35 * pageBytes, store.memoryUsed());
+		store.close();
+		assertEquals(0, store.memoryUsed());
+	}
+
+	@Test
+	public void testOffHeapStoreStopsGrowingUnderDeleteAndInsert() {
+		OffHeapNodeStore store = new OffHeapNodeStore();
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			text.append((char) ('a' + i % 26));
+		}
+		ArrayEditTree t = new ArrayEditTree(text, store);
+		long memory = store.memoryUsed();
+		Random random = new Random(230);
+		for (int i = 0; i < 500; i++) {
+			int start = random.nextInt(t.size());
+			int length = random.nextInt(Math.min(20000, t.size() - start) + 1);
+			ArrayEditTree removed = t.delete(start, length);
+			assertEquals(length, removed.size());
+			removed.release();
+			t.insert(text.subSequence(start, start + length), random.nextInt(t.size() + 1));
+			assertEquals(memory, store.memoryUsed());
+		}
+		assertEquals(100000, t.size());
+		checkTree(t);
+		store.close();
+	}
+}
@@ -0,0 +1,1145 @@
+package editortrees;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.Stack;
+
+import editortrees.Node.Code;
+
+// A height-balanced binary tree with rank, like EditTree, except that each
+// node holds a chunk of characters instead of just one. It is a rope: rank
+// counts characters, not nodes, so a document needs about one node per
+// chunk and heap use per character is a small fraction of EditTree's.
+// It is a TextTree, so it can stand in for an EditTree.
+
+public class ChunkedEditTree implements TextTree<ChunkedEditTree> {
+
+	public static final int DEFAULT_CHUNK_CAPACITY = 256;
+	static final Chunk NULL_CHUNK = new Chunk(0);
+
+	private Chunk root;
+	private final int chunkCapacity;
+	private int size;
+	private int numberOfRotation = 0;
+
+	/**
+	 * A node of a ChunkedEditTree. Its characters are chars[0..count).
+	 */
+	static class Chunk {
+		char[] chars;
+		int count;
+		int rank; // number of characters in the left subtree
+		Code balance = Code.SAME;
+		Chunk left = NULL_CHUNK, right = NULL_CHUNK, parent = NULL_CHUNK;
+
+		Chunk(int capacity) {
+			this.chars = new char[capacity];
+		}
+	}
+
+	/**
+	 * Construct an empty tree whose nodes hold DEFAULT_CHUNK_CAPACITY
+	 * characters.
+	 */
+	public ChunkedEditTree() {
+		this(DEFAULT_CHUNK_CAPACITY);
+	}
+
+	/**
+	 * Construct an empty tree whose nodes hold up to chunkCapacity characters.
+	 * Somewhere between 64 and 1024 is a good choice: bigger chunks save
+	 * memory, smaller ones make adds and deletes in the middle of a chunk
+	 * cheaper.
+	 *
+	 * @param chunkCapacity
+	 * @throws IllegalArgumentException
+	 *             if chunkCapacity is not positive
+	 */
+	public ChunkedEditTree(int chunkCapacity) {
+		if (chunkCapacity < 1) {
+			throw new IllegalArgumentException("chunk capacity must be positive");
+		}
+		this.chunkCapacity = chunkCapacity;
+		this.root = NULL_CHUNK;
+	}
+
+	/**
+	 * Create a tree whose toString is text, in O(N) time, using full chunks of
+	 * DEFAULT_CHUNK_CAPACITY characters.
+	 *
+	 * @param text
+	 */
+	public ChunkedEditTree(CharSequence text) {
+		this(text, DEFAULT_CHUNK_CAPACITY);
+	}
+
+	/**
+	 * Create a tree whose toString is text, in O(N) time, using full chunks of
+	 * chunkCapacity characters.
+	 *
+	 * @param text
+	 * @param chunkCapacity
+	 */
+	public ChunkedEditTree(CharSequence text, int chunkCapacity) {
+		this(chunkCapacity);
+		int chunks = (text.length() + chunkCapacity - 1) / chunkCapacity;
+		this.root = this.build(text, 0, chunks - 1);
+		this.size = text.length();
+	}
+
+	private ChunkedEditTree(Chunk root, int size, int chunkCapacity) {
+		this(chunkCapacity);
+		this.root = root;
+		this.size = size;
+	}
+
+	/**
+	 * Builds chunks low..high the same way as EditTree builds its nodes. Only
+	 * the very last chunk of the text can be partly filled, so every chunk to
+	 * the left of mid is full.
+	 */
+	private Chunk build(CharSequence text, int low, int high) {
+		if (low > high) {
+			return NULL_CHUNK;
+		}
+		int mid = (low + high) >>> 1;
+		Chunk chunk = new Chunk(this.chunkCapacity);
+		int start = mid * this.chunkCapacity;
+		chunk.count = Math.min(this.chunkCapacity, text.length() - start);
+		for (int i = 0; i < chunk.count; i++) {
+			chunk.chars[i] = text.charAt(start + i);
+		}
+		chunk.left = this.build(text, low, mid - 1);
+		chunk.right = this.build(text, mid + 1, high);
+		if (chunk.left != NULL_CHUNK) {
+			chunk.left.parent = chunk;
+		}
+		if (chunk.right != NULL_CHUNK) {
+			chunk.right.parent = chunk;
+		}
+		chunk.rank = (mid - low) * this.chunkCapacity;
+		if (builtHeight(high - mid) > builtHeight(mid - low)) {
+			chunk.balance = Code.RIGHT;
+		}
+		return chunk;
+	}
+
+	private static int builtHeight(int chunks) {
+		return 31 - Integer.numberOfLeadingZeros(chunks);
+	}
+
+	/**
+	 * @return the number of characters in this tree
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return the height of this tree, found from the balance codes in
+	 *         O(log n) time
+	 */
+	public int height() {
+		return heightFromBalanceCodes(this.root);
+	}
+
+	/**
+	 * @return number of rotations since tree was created. A double rotation
+	 *         counts as two.
+	 */
+	public int totalRotationCount() {
+		return this.numberOfRotation;
+	}
+
+	Chunk getRoot() {
+		return this.root;
+	}
+
+	/**
+	 * @return the number of characters each new chunk can hold
+	 */
+	public int getChunkCapacity() {
+		return this.chunkCapacity;
+	}
+
+	/**
+	 * @param ch
+	 *            character to add to the end of this tree.
+	 */
+	public void add(char ch) {
+		this.add(ch, this.size);
+	}
+
+	/**
+	 * Adds ch into the chunk holding position pos. Only if that chunk is full
+	 * is a new node made, holding the upper half of the chunk (or just ch
+	 * when adding at the end of the chunk, so that typing forward fills
+	 * chunks completely).
+	 *
+	 * @param ch
+	 *            character to add
+	 * @param pos
+	 *            character added in this inorder position
+	 * @throws IndexOutOfBoundsException
+	 *             if pos is negative or too large for this tree
+	 */
+	public void add(char ch, int pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos > this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		this.size++;
+		if (this.root == NULL_CHUNK) {
+			this.root = new Chunk(this.chunkCapacity);
+			this.root.chars[0] = ch;
+			this.root.count = 1;
+			return;
+		}
+		Chunk current = this.root;
+		while (true) {
+			if (pos < current.rank) {
+				current.rank++;
+				current = current.left;
+			} else if (pos <= current.rank + current.count) {
+				break;
+			} else {
+				pos = pos - current.rank - current.count;
+				current = current.right;
+			}
+		}
+		int offset = pos - current.rank;
+		if (current.count < current.chars.length) {
+			insertInto(current, offset, ch);
+			return;
+		}
+		Chunk next = new Chunk(current.chars.length);
+		if (offset == current.count) {
+			next.chars[0] = ch;
+			next.count = 1;
+		} else {
+			int half = current.count / 2;
+			next.count = current.count - half;
+			System.arraycopy(current.chars, half, next.chars, 0, next.count);
+			current.count = half;
+			if (offset <= half) {
+				insertInto(current, offset, ch);
+			} else {
+				insertInto(next, offset - half, ch);
+			}
+		}
+		this.addAfter(current, next);
+	}
+
+	private static void insertInto(Chunk chunk, int offset, char ch) {
+		System.arraycopy(chunk.chars, offset, chunk.chars, offset + 1, chunk.count - offset);
+		chunk.chars[offset] = ch;
+		chunk.count++;
+	}
+
+	/**
+	 * Hangs next into the tree as the inorder successor of chunk. The
+	 * characters of next must already be counted in the ranks above chunk.
+	 */
+	private void addAfter(Chunk chunk, Chunk next) {
+		if (chunk.right == NULL_CHUNK) {
+			chunk.right = next;
+			next.parent = chunk;
+		} else {
+			Chunk current = chunk.right;
+			current.rank += next.count;
+			while (current.left != NULL_CHUNK) {
+				current = current.left;
+				current.rank += next.count;
+			}
+			current.left = next;
+			next.parent = current;
+		}
+		this.rebalanceAfterGrowth(next);
+		this.updateRoot();
+	}
+
+	/**
+	 * @param pos
+	 *            position in the tree
+	 * @return the character at that position
+	 * @throws IndexOutOfBoundsException
+	 */
+	public char get(int pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos >= this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		Chunk current = this.root;
+		while (true) {
+			if (pos < current.rank) {
+				current = current.left;
+			} else if (pos < current.rank + current.count) {
+				return current.chars[pos - current.rank];
+			} else {
+				pos = pos - current.rank - current.count;
+				current = current.right;
+			}
+		}
+	}
+
+	/**
+	 * Finds pos once and then copies whole chunks, so it takes
+	 * O(length / chunk size + log N) steps.
+	 *
+	 * @param pos
+	 *            location of the beginning of the string to retrieve
+	 * @param length
+	 *            length of the string to retrieve
+	 * @return string of length that starts in position pos
+	 * @throws IndexOutOfBoundsException
+	 *             unless both pos and pos+length-1 are legitimate indexes
+	 *             within this tree.
+	 */
+	public String get(int pos, int length) throws IndexOutOfBoundsException {
+		if (pos < 0 || length < 0 || length > this.size - pos) {
+			throw new IndexOutOfBoundsException();
+		}
+		char[] result = new char[length];
+		if (length == 0) {
+			return "";
+		}
+		Chunk current = this.root;
+		while (true) {
+			if (pos < current.rank) {
+				current = current.left;
+			} else if (pos < current.rank + current.count) {
+				break;
+			} else {
+				pos = pos - current.rank - current.count;
+				current = current.right;
+			}
+		}
+		int offset = pos - current.rank;
+		int copied = 0;
+		while (copied < length) {
+			int n = Math.min(current.count - offset, length - copied);
+			System.arraycopy(current.chars, offset, result, copied, n);
+			copied += n;
+			offset = 0;
+			current = successor(current);
+		}
+		return new String(result);
+	}
+
+	private static Chunk predecessor(Chunk chunk) {
+		if (chunk.left != NULL_CHUNK) {
+			chunk = chunk.left;
+			while (chunk.right != NULL_CHUNK) {
+				chunk = chunk.right;
+			}
+			return chunk;
+		}
+		while (chunk.parent != NULL_CHUNK && chunk.parent.left == chunk) {
+			chunk = chunk.parent;
+		}
+		return chunk.parent;
+	}
+
+	private static Chunk successor(Chunk chunk) {
+		if (chunk.right != NULL_CHUNK) {
+			chunk = chunk.right;
+			while (chunk.left != NULL_CHUNK) {
+				chunk = chunk.left;
+			}
+			return chunk;
+		}
+		while (chunk.parent != NULL_CHUNK && chunk.parent.right == chunk) {
+			chunk = chunk.parent;
+		}
+		return chunk.parent;
+	}
+
+	/**
+	 * @return the string produced by an inorder traversal of this tree
+	 */
+	@Override
+	public String toString() {
+		return this.get(0, this.size);
+	}
+
+	/**
+	 * Same as size().
+	 */
+	@Override
+	public int length() {
+		return this.size;
+	}
+
+	/**
+	 * Same as get(int).
+	 */
+	@Override
+	public char charAt(int index) throws IndexOutOfBoundsException {
+		return this.get(index);
+	}
+
+	/**
+	 * @return a copy of positions start .. end - 1 of this tree, made like
+	 *         get(int, int)
+	 * @throws IndexOutOfBoundsException
+	 *             unless 0 <= start <= end <= size()
+	 */
+	@Override
+	public CharSequence subSequence(int start, int end) throws IndexOutOfBoundsException {
+		if (start < 0 || start > end || end > this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		return this.get(start, end - start);
+	}
+
+	/**
+	 * Writes the characters of this tree to out one chunk at a time, straight
+	 * from the chunks' arrays.
+	 *
+	 * @param out
+	 * @throws IOException
+	 *             if out throws one
+	 */
+	public void writeTo(Appendable out) throws IOException {
+		if (this.root == NULL_CHUNK) {
+			return;
+		}
+		for (Chunk current = this.first(); current != NULL_CHUNK; current = successor(current)) {
+			if (out instanceof Writer) {
+				((Writer) out).write(current.chars, 0, current.count);
+			} else {
+				out.append(CharBuffer.wrap(current.chars, 0, current.count));
+			}
+		}
+	}
+
+	/**
+	 * Like EditTree.toDebugString, with each node shown as all the characters
+	 * of its chunk.
+	 *
+	 * @return the chunks of this tree in preorder, each followed by its rank
+	 *         and balance code, like [def3=, abc0=, ghi0=]
+	 */
+	public String toDebugString() {
+		StringBuilder result = new StringBuilder("[");
+		if (this.root != NULL_CHUNK) {
+			Stack<Chunk> stack = new Stack<Chunk>();
+			stack.push(this.root);
+			while (!stack.empty()) {
+				Chunk chunk = stack.pop();
+				if (result.length() > 1) {
+					result.append(", ");
+				}
+				result.append(chunk.chars, 0, chunk.count).append(chunk.rank).append(chunk.balance);
+				if (chunk.right != NULL_CHUNK) {
+					stack.push(chunk.right);
+				}
+				if (chunk.left != NULL_CHUNK) {
+					stack.push(chunk.left);
+				}
+			}
+		}
+		return result.append(']').toString();
+	}
+
+	/**
+	 * Removes one character from its chunk. The node goes away when its chunk
+	 * is empty, or when a chunk less than half full fits into its neighbour.
+	 *
+	 * @param pos
+	 *            position of character to delete from this tree
+	 * @return the character that is deleted
+	 * @throws IndexOutOfBoundsException
+	 */
+	public char delete(int pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos >= this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		this.size--;
+		Chunk current = this.root;
+		while (true) {
+			if (pos < current.rank) {
+				current.rank--;
+				current = current.left;
+			} else if (pos < current.rank + current.count) {
+				break;
+			} else {
+				pos = pos - current.rank - current.count;
+				current = current.right;
+			}
+		}
+		int offset = pos - current.rank;
+		char deleted = current.chars[offset];
+		System.arraycopy(current.chars, offset + 1, current.chars, offset, current.count - offset - 1);
+		current.count--;
+		if (current.count == 0) {
+			this.removeChunk(current);
+		} else {
+			this.refill(current);
+		}
+		return deleted;
+	}
+
+	/**
+	 * Takes chunk out of the tree, with whatever characters it still holds.
+	 * The caller fixes size.
+	 */
+	private void removeChunk(Chunk removed) {
+		if (removed.count > 0) {
+			addToRanksAbove(removed, -removed.count);
+		}
+		Chunk parent;
+		boolean fromLeft;
+		if (removed.left != NULL_CHUNK && removed.right != NULL_CHUNK) {
+			Chunk successor = removed.right;
+			if (successor.left == NULL_CHUNK) {
+				parent = successor;
+				fromLeft = false;
+			} else {
+				while (successor.left != NULL_CHUNK) {
+					successor = successor.left;
+				}
+				for (Chunk current = removed.right; current != successor; current = current.left) {
+					current.rank -= successor.count;
+				}
+				parent = successor.parent;
+				fromLeft = true;
+				parent.left = successor.right;
+				if (successor.right != NULL_CHUNK) {
+					successor.right.parent = parent;
+				}
+				successor.right = removed.right;
+				successor.right.parent = successor;
+			}
+			successor.left = removed.left;
+			successor.left.parent = successor;
+			successor.rank = removed.rank;
+			successor.balance = removed.balance;
+			replaceChild(removed.parent, removed, successor);
+			if (removed == this.root) {
+				this.root = successor;
+			}
+		} else {
+			Chunk child = (removed.left != NULL_CHUNK) ? removed.left : removed.right;
+			parent = removed.parent;
+			fromLeft = parent != NULL_CHUNK && parent.left == removed;
+			replaceChild(parent, removed, child);
+			if (removed == this.root) {
+				this.root = child;
+			}
+		}
+		this.rebalanceAfterDelete(parent, fromLeft);
+		this.updateRoot();
+		removed.left = NULL_CHUNK;
+		removed.right = NULL_CHUNK;
+		removed.parent = NULL_CHUNK;
+	}
+
+	/**
+	 * Adds delta to the rank of every chunk that has chunk in its left
+	 * subtree, for when chunk gains or loses characters.
+	 */
+	private static void addToRanksAbove(Chunk chunk, int delta) {
+		for (Chunk child = chunk, parent = chunk.parent; parent != NULL_CHUNK; child = parent, parent = parent.parent) {
+			if (parent.left == child) {
+				parent.rank += delta;
+			}
+		}
+	}
+
+	private static boolean isSparse(Chunk chunk) {
+		return 2 * chunk.count < chunk.chars.length;
+	}
+
+	/**
+	 * If chunk is less than half full, evens it out with the chunk after it
+	 * (or before it, at the end of the tree). Otherwise deletes and splits
+	 * would leave behind many nearly empty chunks.
+	 */
+	private void refill(Chunk chunk) {
+		if (!isSparse(chunk)) {
+			return;
+		}
+		Chunk next = successor(chunk);
+		if (next != NULL_CHUNK) {
+			this.evenOut(chunk, next);
+			return;
+		}
+		Chunk previous = predecessor(chunk);
+		if (previous != NULL_CHUNK) {
+			this.evenOut(previous, chunk);
+		}
+	}
+
+	/**
+	 * Moves all of the characters of two chunks next to each other in order
+	 * into one of them and removes the other, if they fit. If not, shares the
+	 * characters about equally between them.
+	 */
+	private void evenOut(Chunk before, Chunk after) {
+		if (this.merge(before, after)) {
+			return;
+		}
+		int total = before.count + after.count;
+		int target = Math.max(total - after.chars.length, Math.min(total / 2, before.chars.length));
+		if (before.count < target) {
+			moveToBefore(before, after, target - before.count);
+		} else if (before.count > target) {
+			moveToAfter(before, after, before.count - target);
+		}
+	}
+
+	/**
+	 * Moves all of the characters of two chunks next to each other in order
+	 * into one of them and removes the other, if they fit.
+	 *
+	 * @return true if they were merged
+	 */
+	private boolean merge(Chunk before, Chunk after) {
+		int total = before.count + after.count;
+		if (total <= before.chars.length) {
+			moveToBefore(before, after, after.count);
+			this.removeChunk(after);
+			return true;
+		} else if (total <= after.chars.length) {
+			moveToAfter(before, after, before.count);
+			this.removeChunk(before);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Moves the first n characters of after to the end of before.
+	 */
+	private static void moveToBefore(Chunk before, Chunk after, int n) {
+		System.arraycopy(after.chars, 0, before.chars, before.count, n);
+		System.arraycopy(after.chars, n, after.chars, 0, after.count - n);
+		before.count += n;
+		after.count -= n;
+		addToRanksAbove(before, n);
+		addToRanksAbove(after, -n);
+	}
+
+	/**
+	 * Moves the last n characters of before to the start of after.
+	 */
+	private static void moveToAfter(Chunk before, Chunk after, int n) {
+		System.arraycopy(after.chars, 0, after.chars, n, after.count);
+		System.arraycopy(before.chars, before.count - n, after.chars, 0, n);
+		before.count -= n;
+		after.count += n;
+		addToRanksAbove(before, -n);
+		addToRanksAbove(after, n);
+	}
+
+	/**
+	 * Removes a range of characters in O(log N) time.
+	 *
+	 * @param start
+	 *            position of beginning of string to delete
+	 * @param length
+	 *            length of string to delete
+	 * @return a ChunkedEditTree containing the deleted string
+	 * @throws IndexOutOfBoundsException
+	 *             unless both start and start+length-1 are in range for this
+	 *             tree.
+	 */
+	public ChunkedEditTree delete(int start, int length) throws IndexOutOfBoundsException {
+		if (start < 0 || length < 0 || length > this.size - start) {
+			throw new IndexOutOfBoundsException();
+		}
+		ChunkedEditTree removed = this.split(start);
+		this.concatenate(removed.split(length));
+		return removed;
+	}
+
+	/**
+	 * Like delete(int, int), but the removed characters are thrown away
+	 * instead of being handed back in a new tree.
+	 *
+	 * @param start
+	 *            position of beginning of string to delete
+	 * @param length
+	 *            length of string to delete
+	 * @throws IndexOutOfBoundsException
+	 *             unless both start and start+length-1 are in range for this
+	 *             tree.
+	 */
+	public void discard(int start, int length) throws IndexOutOfBoundsException {
+		this.delete(start, length);
+	}
+
+	/**
+	 * Adds all of text so that its first character ends up at pos, in
+	 * O(k + log N) time for k characters: the text is built into full chunks
+	 * on its own, this tree is split at pos, and the pieces are concatenated
+	 * back together, which evens out the chunks at the seams.
+	 *
+	 * @param text
+	 *            characters to add
+	 * @param pos
+	 *            inorder position of the first added character
+	 * @throws IndexOutOfBoundsException
+	 *             if pos is negative or too large for this tree
+	 */
+	public void insert(CharSequence text, int pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos > this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (text.length() == 0) {
+			return;
+		}
+		ChunkedEditTree right = this.split(pos);
+		this.concatenate(new ChunkedEditTree(text, this.chunkCapacity));
+		this.concatenate(right);
+	}
+
+	/**
+	 * Append the contents of the other tree to this one in O(log N) time. The
+	 * first chunk of other is used as the node that joins the two trees. The
+	 * chunks of other keep their own capacity. The two chunks at the seam
+	 * become one if they fit in one, or are evened out if either is less
+	 * than half full. Other is made empty.
+	 *
+	 * @param other
+	 * @throws IllegalArgumentException
+	 *             if this == other
+	 */
+	public void concatenate(ChunkedEditTree other) throws IllegalArgumentException {
+		if (this == other) {
+			throw new IllegalArgumentException();
+		}
+		this.numberOfRotation += other.numberOfRotation;
+		other.numberOfRotation = 0;
+		if (other.root == NULL_CHUNK) {
+			return;
+		}
+		int size = this.size;
+		this.size += other.size;
+		other.size = 0;
+		if (this.root == NULL_CHUNK) {
+			this.root = other.root;
+			other.root = NULL_CHUNK;
+			return;
+		}
+		Chunk pivot = other.first();
+		other.removeChunk(pivot);
+		this.numberOfRotation += other.numberOfRotation;
+		other.numberOfRotation = 0;
+		this.root = new Splitter().join(this.root, heightFromBalanceCodes(this.root), size, pivot, other.root,
+				heightFromBalanceCodes(other.root));
+		other.root = NULL_CHUNK;
+		Chunk before = predecessor(pivot);
+		if (isSparse(before) || isSparse(pivot)) {
+			this.evenOut(before, pivot);
+		} else {
+			this.merge(before, pivot);
+		}
+	}
+
+	private Chunk first() {
+		Chunk current = this.root;
+		while (current.left != NULL_CHUNK) {
+			current = current.left;
+		}
+		return current;
+	}
+
+	private Chunk last() {
+		Chunk current = this.root;
+		while (current.right != NULL_CHUNK) {
+			current = current.right;
+		}
+		return current;
+	}
+
+	/**
+	 * Splits in time proportional to the height of this tree. If pos falls
+	 * inside a chunk, that chunk is cut in two first. A piece less than half
+	 * full is merged into its neighbour if it fits, but is not refilled: the
+	 * two pieces end up at the ends of their trees, where concatenate can put
+	 * them back together.
+	 *
+	 * @param pos
+	 *            where to split this tree
+	 * @return a new tree containing all of the characters of this tree whose
+	 *         positions are >= pos. Their chunks are removed from this tree.
+	 * @throws IndexOutOfBoundsException
+	 */
+	public ChunkedEditTree split(int pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos > this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		this.cutChunkAt(pos);
+		Splitter splitter = new Splitter();
+		splitter.split(this.root, heightFromBalanceCodes(this.root), pos);
+		int rightSize = this.size - pos;
+		this.root = splitter.left;
+		this.size = pos;
+		ChunkedEditTree right = new ChunkedEditTree(splitter.right, rightSize, this.chunkCapacity);
+		if (this.root != NULL_CHUNK) {
+			Chunk last = this.last();
+			Chunk previous = predecessor(last);
+			if (isSparse(last) && previous != NULL_CHUNK) {
+				this.merge(previous, last);
+			}
+		}
+		if (right.root != NULL_CHUNK) {
+			Chunk first = right.first();
+			Chunk next = successor(first);
+			if (isSparse(first) && next != NULL_CHUNK) {
+				right.merge(first, next);
+			}
+		}
+		return right;
+	}
+
+	/**
+	 * Makes pos the first position of a chunk, by moving the rest of the chunk
+	 * that holds pos into a new chunk right after it.
+	 */
+	private void cutChunkAt(int pos) {
+		if (pos == this.size) {
+			return;
+		}
+		Chunk current = this.root;
+		while (true) {
+			if (pos < current.rank) {
+				current = current.left;
+			} else if (pos < current.rank + current.count) {
+				break;
+			} else {
+				pos = pos - current.rank - current.count;
+				current = current.right;
+			}
+		}
+		int offset = pos - current.rank;
+		if (offset == 0) {
+			return;
+		}
+		Chunk next = new Chunk(current.chars.length);
+		next.count = current.count - offset;
+		System.arraycopy(current.chars, offset, next.chars, 0, next.count);
+		current.count = offset;
+		this.addAfter(current, next);
+	}
+
+	/**
+	 * @return the height of the tree below chunk, found by always stepping
+	 *         into the taller child
+	 */
+	private static int heightFromBalanceCodes(Chunk chunk) {
+		int height = -1;
+		while (chunk != NULL_CHUNK) {
+			height++;
+			chunk = (chunk.balance == Code.LEFT) ? chunk.left : chunk.right;
+		}
+		return height;
+	}
+
+	// Rebalancing. These are the same algorithms EditTree uses, with ranks
+	// counting the characters of a chunk instead of 1 per node.
+
+	private Chunk rotateLeft(Chunk parent) {
+		Chunk child = parent.right;
+		child.rank = child.rank + parent.rank + parent.count;
+		parent.right = child.left;
+		if (parent.right != NULL_CHUNK) {
+			parent.right.parent = parent;
+		}
+		child.left = parent;
+		parent.parent = child;
+		this.numberOfRotation++;
+		return child;
+	}
+
+	private Chunk rotateRight(Chunk parent) {
+		Chunk child = parent.left;
+		parent.rank = parent.rank - child.rank - child.count;
+		parent.left = child.right;
+		if (parent.left != NULL_CHUNK) {
+			parent.left.parent = parent;
+		}
+		child.right = parent;
+		parent.parent = child;
+		this.numberOfRotation++;
+		return child;
+	}
+
+	private Chunk singleLeft(Chunk a) {
+		Chunk b = this.rotateLeft(a);
+		a.balance = Code.SAME;
+		b.balance = Code.SAME;
+		return b;
+	}
+
+	private Chunk singleRight(Chunk a) {
+		Chunk b = this.rotateRight(a);
+		a.balance = Code.SAME;
+		b.balance = Code.SAME;
+		return b;
+	}
+
+	private Chunk doubleLeft(Chunk a) {
+		Chunk c = a.right;
+		Chunk b = c.left;
+		Code code = b.balance;
+		a.right = this.rotateRight(c);
+		b.parent = a;
+		this.rotateLeft(a);
+		a.balance = (code == Code.RIGHT) ? Code.LEFT : Code.SAME;
+		c.balance = (code == Code.LEFT) ? Code.RIGHT : Code.SAME;
+		b.balance = Code.SAME;
+		return b;
+	}
+
+	private Chunk doubleRight(Chunk a) {
+		Chunk c = a.left;
+		Chunk b = c.right;
+		Code code = b.balance;
+		a.left = this.rotateLeft(c);
+		b.parent = a;
+		this.rotateRight(a);
+		a.balance = (code == Code.LEFT) ? Code.RIGHT : Code.SAME;
+		c.balance = (code == Code.RIGHT) ? Code.LEFT : Code.SAME;
+		b.balance = Code.SAME;
+		return b;
+	}
+
+	/**
+	 * Same as EditTree.rebalanceAfterGrowth.
+	 *
+	 * @return true if the top of the tree got taller
+	 */
+	private boolean rebalanceAfterGrowth(Chunk child) {
+		Chunk parent = child.parent;
+		while (parent != NULL_CHUNK) {
+			Chunk grandParent = parent.parent;
+			if (child == parent.left) {
+				if (parent.balance == Code.RIGHT) {
+					parent.balance = Code.SAME;
+					return false;
+				} else if (parent.balance == Code.SAME) {
+					parent.balance = Code.LEFT;
+				} else if (child.balance == Code.LEFT) {
+					replaceChild(grandParent, parent, this.singleRight(parent));
+					return false;
+				} else if (child.balance == Code.RIGHT) {
+					replaceChild(grandParent, parent, this.doubleRight(parent));
+					return false;
+				} else {
+					replaceChild(grandParent, parent, this.singleRight(parent));
+					parent.balance = Code.LEFT;
+					child.balance = Code.RIGHT;
+					parent = child;
+				}
+			} else {
+				if (parent.balance == Code.LEFT) {
+					parent.balance = Code.SAME;
+					return false;
+				} else if (parent.balance == Code.SAME) {
+					parent.balance = Code.RIGHT;
+				} else if (child.balance == Code.RIGHT) {
+					replaceChild(grandParent, parent, this.singleLeft(parent));
+					return false;
+				} else if (child.balance == Code.LEFT) {
+					replaceChild(grandParent, parent, this.doubleLeft(parent));
+					return false;
+				} else {
+					replaceChild(grandParent, parent, this.singleLeft(parent));
+					parent.balance = Code.RIGHT;
+					child.balance = Code.LEFT;
+					parent = child;
+				}
+			}
+			child = parent;
+			parent = grandParent;
+		}
+		return true;
+	}
+
+	/**
+	 * Same as EditTree.rebalanceAfterDelete.
+	 *
+	 * @return true if the top of the tree got shorter
+	 */
+	private boolean rebalanceAfterDelete(Chunk parent, boolean fromLeft) {
+		while (parent != NULL_CHUNK) {
+			Chunk grandParent = parent.parent;
+			boolean parentFromLeft = grandParent != NULL_CHUNK && grandParent.left == parent;
+			if (fromLeft) {
+				if (parent.balance == Code.SAME) {
+					parent.balance = Code.RIGHT;
+					return false;
+				} else if (parent.balance == Code.LEFT) {
+					parent.balance = Code.SAME;
+				} else {
+					Chunk sibling = parent.right;
+					if (sibling.balance == Code.LEFT) {
+						replaceChild(grandParent, parent, this.doubleLeft(parent));
+					} else if (sibling.balance == Code.RIGHT) {
+						replaceChild(grandParent, parent, this.singleLeft(parent));
+					} else {
+						replaceChild(grandParent, parent, this.singleLeft(parent));
+						sibling.balance = Code.LEFT;
+						parent.balance = Code.RIGHT;
+						return false;
+					}
+				}
+			} else {
+				if (parent.balance == Code.SAME) {
+					parent.balance = Code.LEFT;
+					return false;
+				} else if (parent.balance == Code.RIGHT) {
+					parent.balance = Code.SAME;
+				} else {
+					Chunk sibling = parent.left;
+					if (sibling.balance == Code.RIGHT) {
+						replaceChild(grandParent, parent, this.doubleRight(parent));
+					} else if (sibling.balance == Code.LEFT) {
+						replaceChild(grandParent, parent, this.singleRight(parent));
+					} else {
+						replaceChild(grandParent, parent, this.singleRight(parent));
+						sibling.balance = Code.RIGHT;
+						parent.balance = Code.LEFT;
+						return false;
+					}
+				}
+			}
+			parent = grandParent;
+			fromLeft = parentFromLeft;
+		}
+		return true;
+	}
+
+	private static void replaceChild(Chunk parent, Chunk oldChild, Chunk newChild) {
+		if (newChild != NULL_CHUNK) {
+			newChild.parent = parent;
+		}
+		if (parent == NULL_CHUNK) {
+			return;
+		} else if (parent.left == oldChild) {
+			parent.left = newChild;
+		} else {
+			parent.right = newChild;
+		}
+	}
+
+	private void updateRoot() {
+		if (this.root != NULL_CHUNK && this.root.parent != NULL_CHUNK) {
+			this.root = this.root.parent;
+		}
+	}
+
+	/**
+	 * Same as EditTree's Splitter, with sizes counted in characters. split()
+	 * expects pos to be the first position of a chunk (or the end).
+	 */
+	private class Splitter {
+		private Chunk left = NULL_CHUNK;
+		private int leftHeight = -1;
+		private Chunk right = NULL_CHUNK;
+		private int rightHeight = -1;
+		private int height;
+
+		public void split(Chunk chunk, int height, int pos) {
+			if (chunk == NULL_CHUNK) {
+				this.left = NULL_CHUNK;
+				this.leftHeight = -1;
+				this.right = NULL_CHUNK;
+				this.rightHeight = -1;
+				return;
+			}
+			Chunk leftChild = chunk.left;
+			Chunk rightChild = chunk.right;
+			int leftChildHeight = height - ((chunk.balance == Code.RIGHT) ? 2 : 1);
+			int rightChildHeight = height - ((chunk.balance == Code.LEFT) ? 2 : 1);
+			int leftChildSize = chunk.rank;
+			if (leftChild != NULL_CHUNK) {
+				leftChild.parent = NULL_CHUNK;
+			}
+			if (rightChild != NULL_CHUNK) {
+				rightChild.parent = NULL_CHUNK;
+			}
+			if (pos <= chunk.rank) {
+				if (pos == chunk.rank) {
+					this.left = leftChild;
+					this.leftHeight = leftChildHeight;
+					this.right = NULL_CHUNK;
+					this.rightHeight = -1;
+				} else {
+					this.split(leftChild, leftChildHeight, pos);
+				}
+				this.right = this.join(this.right, this.rightHeight, leftChildSize - pos, chunk, rightChild,
+						rightChildHeight);
+				this.rightHeight = this.height;
+			} else {
+				this.split(rightChild, rightChildHeight, pos - chunk.rank - chunk.count);
+				this.left = this.join(leftChild, leftChildHeight, leftChildSize, chunk, this.left, this.leftHeight);
+				this.leftHeight = this.height;
+			}
+		}
+
+		public Chunk join(Chunk left, int leftHeight, int leftSize, Chunk pivot, Chunk right, int rightHeight) {
+			if (leftHeight > rightHeight + 1) {
+				Chunk parent = NULL_CHUNK;
+				Chunk spine = left;
+				int spineHeight = leftHeight;
+				int spineSize = leftSize;
+				while (spineHeight > rightHeight + 1) {
+					spineSize = spineSize - spine.rank - spine.count;
+					spineHeight -= (spine.balance == Code.LEFT) ? 2 : 1;
+					parent = spine;
+					spine = spine.right;
+				}
+				link(pivot, spine, spineSize, right);
+				pivot.balance = (spineHeight == rightHeight) ? Code.SAME : Code.LEFT;
+				parent.right = pivot;
+				pivot.parent = parent;
+				boolean grew = ChunkedEditTree.this.rebalanceAfterGrowth(pivot);
+				this.height = grew ? leftHeight + 1 : leftHeight;
+				return (left.parent == NULL_CHUNK) ? left : left.parent;
+			} else if (rightHeight > leftHeight + 1) {
+				Chunk parent = NULL_CHUNK;
+				Chunk spine = right;
+				int spineHeight = rightHeight;
+				while (spineHeight > leftHeight + 1) {
+					spine.rank += leftSize + pivot.count;
+					spineHeight -= (spine.balance == Code.RIGHT) ? 2 : 1;
+					parent = spine;
+					spine = spine.left;
+				}
+				link(pivot, left, leftSize, spine);
+				pivot.balance = (spineHeight == leftHeight) ? Code.SAME : Code.RIGHT;
+				parent.left = pivot;
+				pivot.parent = parent;
+				boolean grew = ChunkedEditTree.this.rebalanceAfterGrowth(pivot);
+				this.height = grew ? rightHeight + 1 : rightHeight;
+				return (right.parent == NULL_CHUNK) ? right : right.parent;
+			}
+			link(pivot, left, leftSize, right);
+			pivot.parent = NULL_CHUNK;
+			if (leftHeight > rightHeight) {
+				pivot.balance = Code.LEFT;
+			} else if (rightHeight > leftHeight) {
+				pivot.balance = Code.RIGHT;
+			} else {
+				pivot.balance = Code.SAME;
+			}
+			this.height = Math.max(leftHeight, rightHeight) + 1;
+			return pivot;
+		}
+
+		private void link(Chunk chunk, Chunk left, int leftSize, Chunk right) {
+			chunk.left = left;
+			chunk.right = right;
+			chunk.rank = leftSize;
+			if (left != NULL_CHUNK) {
+				left.parent = chunk;
+			}
+			if (right != NULL_CHUNK) {
+				right.parent = chunk;
+			}
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package editortrees;
+
+import static editortrees.TreeChecks.checkChunks;
+import static editortrees.TreeChecks.checkTree;
+import static editortrees.TreeChecks.countChunks;
+import static editortrees.TreeChecks.maxHeight;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for ChunkedEditTree. Most use tiny chunks so that chunks fill up,
+ * split and empty out with only a few characters.
+ */
+public class ChunkedEditTreeTest {
+
+	@Test
+	public void testAddAndGet() {
+		ChunkedEditTree t = new ChunkedEditTree(4);
+		assertEquals("", t.toString());
+		assertEquals(-1, t.height());
+		t.add('b');
+		t.add('d');
+		t.add('a', 0);
+		t.add('c', 2);
+		assertEquals("abcd", t.toString());
+		assertEquals(0, t.height());
+		t.add('e'); // the chunk is full, so 'e' starts a new one
+		t.add('x', 1); // splits the first chunk
+		assertEquals("axbcde", t.toString());
+		assertEquals(6, t.size());
+		for (int i = 0; i < 6; i++) {
+			assertEquals("axbcde".charAt(i), t.get(i));
+		}
+		assertEquals("xbcd", t.get(1, 4));
+		assertEquals("", t.get(6, 0));
+		try {
+			t.get(6);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		try {
+			t.add('z', 7);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+	}
+
+	@Test
+	public void testDelete() {
+		ChunkedEditTree t = new ChunkedEditTree("abcdefghijklmnopqrstuvwxyz", 3);
+		assertEquals('a', t.delete(0));
+		assertEquals('z', t.delete(24));
+		assertEquals('m', t.delete(11));
+		assertEquals("bcdefghijklnopqrstuvwxy", t.toString());
+		while (t.size() > 0) {
+			t.delete(t.size() / 2);
+			checkTree(t);
+		}
+		assertEquals("", t.toString());
+		try {
+			t.delete(0);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+	}
+
+	@Test
+	public void testRandomEditsMatchStringBuilder() {
+		Random random = new Random(230);
+		for (int capacity = 1; capacity <= 64; capacity *= 4) {
+			ChunkedEditTree t = new ChunkedEditTree(capacity);
+			StringBuilder expected = new StringBuilder();
+			for (int i = 0; i < 5000; i++) {
+				if (expected.length() > 0 && random.nextInt(3) == 0) {
+					int pos = random.nextInt(expected.length());
+					assertEquals(expected.charAt(pos), t.delete(pos));
+					expected.deleteCharAt(pos);
+				} else {
+					int pos = random.nextInt(expected.length() + 1);
+					char ch = (char) ('a' + random.nextInt(26));
+					t.add(ch, pos);
+					expected.insert(pos, ch);
+				}
+			}
+			assertEquals(expected.toString(), t.toString());
+			checkTree(t);
+			assertTrue(t.height() <= maxHeight(expected.length()));
+		}
+	}
+
+	@Test
+	public void testSplitAndConcatenate() {
+		String text = "abcdefghijklmnopqrstuvwxyz";
+		for (int pos = 0; pos <= text.length(); pos++) {
+			ChunkedEditTree t = new ChunkedEditTree(text, 4);
+			ChunkedEditTree right = t.split(pos);
+			assertEquals(text.substring(0, pos), t.toString());
+			assertEquals(text.substring(pos), right.toString());
+			checkTree(t);
+			checkTree(right);
+
+			t.concatenate(right);
+			assertEquals(text, t.toString());
+			assertEquals("", right.toString());
+			checkTree(t);
+		}
+
+		ChunkedEditTree t = new ChunkedEditTree(2);
+		ChunkedEditTree other = new ChunkedEditTree(text, 2);
+		t.concatenate(other);
+		t.concatenate(new ChunkedEditTree(text, 5));
+		assertEquals(text + text, t.toString());
+		assertEquals(0, other.size());
+		try {
+			t.concatenate(t);
+			fail("Did not throw IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// success
+		}
+	}
+
+	@Test
+	public void testDeleteRange() {
+		ChunkedEditTree t = new ChunkedEditTree("abcdefghijklmnopqrstuvwxyz", 4);
+		ChunkedEditTree removed = t.delete(3, 5);
+		assertEquals("defgh", removed.toString());
+		assertEquals("abcijklmnopqrstuvwxyz", t.toString());
+		removed = t.delete(15, 6);
+		assertEquals("uvwxyz", removed.toString());
+		assertEquals("abcijklmnopqrst", t.toString());
+		t.add('!', 7);
+		assertEquals("abcijkl!mnopqrst", t.toString());
+		assertEquals(16, checkChunks(t.getRoot()));
+		try {
+			t.delete(10, 7);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+	}
+
+	@Test
+	public void testInsertAndToDebugString() {
+		ChunkedEditTree t = new ChunkedEditTree("abcdefghi", 3);
+		assertEquals("[def3=, abc0=, ghi0=]", t.toDebugString());
+		t.insert("XY", 4);
+		assertEquals("abcdXYefghi", t.toString());
+		checkTree(t);
+		t.insert("", 0);
+		t.discard(0, 11);
+		assertEquals("[]", t.toDebugString());
+		try {
+			t.insert("x", 1);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+	}
+
+	@Test
+	public void testAppendFillsChunks() {
+		ChunkedEditTree t = new ChunkedEditTree(64);
+		for (int i = 0; i < 64 * 100; i++) {
+			t.add((char) ('a' + i % 26));
+		}
+		assertTrue(t.height() <= maxHeight(100));
+		assertEquals(64 * 100, checkChunks(t.getRoot()));
+	}
+
+	@Test
+	public void testDeletesAndSplitsKeepChunksHalfFull() {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 16 * 1000; i++) {
+			text.append((char) ('a' + i % 26));
+		}
+		Random random = new Random(1);
+		ChunkedEditTree t = new ChunkedEditTree(text, 16);
+		StringBuilder expected = new StringBuilder(text);
+		for (int i = 0; i < 15000; i++) {
+			int pos = random.nextInt(t.size());
+			assertEquals(expected.charAt(pos), t.delete(pos));
+			expected.deleteCharAt(pos);
+		}
+		assertEquals(expected.toString(), t.toString());
+		assertEquals(expected.length(), checkChunks(t.getRoot()));
+		// all but the first and last chunk hold at least 8 characters
+		assertTrue(countChunks(t.getRoot()) <= expected.length() / 8 + 2);
+
+		t = new ChunkedEditTree(text, 16);
+		for (int i = 0; i < 1000; i++) {
+			t.concatenate(t.split(random.nextInt(t.size() + 1)));
+		}
+		assertEquals(text.toString(), t.toString());
+		assertEquals(text.length(), checkChunks(t.getRoot()));
+		assertEquals(1000, countChunks(t.getRoot()));
+	}
+}
@@ -4,17 +4,22 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.FontMetrics;
+import java.awt.Frame;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
-import java.awt.geom.AffineTransform;
-import java.awt.geom.Line2D;
-import java.awt.geom.Path2D;
-import java.awt.geom.Point2D;
-import java.awt.geom.Rectangle2D;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.swing.JComponent;
 import javax.swing.JFrame;
+import javax.swing.Timer;
 
 /* dependencies DisplayableTree:
  * 	Node:
@@ -28,13 +33,8 @@ import javax.swing.JFrame;
  * 	EditTree: 
  * 			constructors need booleans
  * 			displayable in boolean constructors
- * 			O(n) height method that is not dependent on balance codes or rank
- * 			O(n) size method that is not dependent on balance codes or rank
- * 	DisplayableNode:
- * 		node.getRank()
- * 		node.getBalance()
- * 		node.getBalance().toString()
- * 		node.getElement()
+ * 			linksChanged(node) for every node whose child links an edit
+ * 			changes, or treeChanged() after edits that change many
  */
 
 /**
@@ -48,14 +48,26 @@ public class DisplayableBinaryTree extends JComponent {
 	public static boolean hasParents = false;
 
 	// a stormy gray background to be easy on the eyes at night, and set a stormy mood.
-	private static final Color BACKGROUND_COLOR = Color.DARK_GRAY;
+	static final Color BACKGROUND_COLOR = Color.DARK_GRAY;
 	// a light blue color, keeping in line with the stormy color scheme
-	private static final Color FOWARD_ARROW_COLOR = new Color(0x3399FF);
-	private static final Color PARENT_ARROW_COLOR = new Color(0x77619A);
-	private static final String FONT_NAME = "Comic Sans MS"; // comics sans for the win
+	static final Color FOWARD_ARROW_COLOR = new Color(0x3399FF);
+	static final Color PARENT_ARROW_COLOR = new Color(0x77619A);
+	static final String FONT_NAME = "Comic Sans MS"; // comics sans for the win
 //	 private static final String FONT_NAME = "ESSTIXFifteen"; // change if you don't want to make it look cool
 	// private static final String FONT_NAME = "ESSTIXThirteen"; // change if you don't want to make it look cool
 //	 private static final String FONT_NAME = "Jokerman"; // change if you don't want to make it look cool
+	static final Color SUMMARY_COLOR = new Color(0x33, 0x99, 0xFF, 0x40);
+	static final Font SUMMARY_FONT = new Font(FONT_NAME, Font.PLAIN, 11);
+	// When nodes are closer together than NODE_PIXELS, subtrees narrower
+	// than SUMMARY_PIXELS are drawn as one triangle.
+	static final double NODE_PIXELS = 8;
+	static final double SUMMARY_PIXELS = 40;
+	static final double MIN_RADIUS = 3;
+	static final double MAX_RADIUS = 30;
+	// zooming stops when the nodes are this far apart
+	private static final double MAX_SPACING = 100;
+	private static final int MIN_WIDTH = 320;
+	private static final int MIN_HEIGHT = 240;
 
 	private int width;
 	private int height;
@@ -64,10 +76,57 @@ public class DisplayableBinaryTree extends JComponent {
 	private double xDistance;
 	private double circleRadius;
 	private double yDistance;
-	private double nodeX;
-	private double nodeY;
 	private double angle;
+	// horizontal zoom, 1 to fit the whole tree, and how far it is scrolled
+	private double zoom = 1;
+	private double panX;
 	private boolean goingCrazy;
+	// set by treeChanged(), cleared when the repaint is asked for
+	private volatile boolean dirty;
+	// What the last layout found out about each node. Only kept while the
+	// window is open, so the nodes themselves carry nothing for the display.
+	private IdentityHashMap<Node, DisplayableNodeWrapper> wrappers;
+	private DisplayableNodeWrapper layoutRoot;
+	// set when an edit did not say which links it changed
+	private boolean wholeLayout = true;
+	private int layoutStamp;
+	// where locate() found a node
+	private int locatedIndex;
+	private int locatedDepth;
+	// the font that fits fontRadius, found again when the circles change size
+	private Font font;
+	private double fontRadius = -1;
+	// keeps the shapes drawn on each paint, so painting allocates nothing
+	private final TreePainter painter = new TreePainter();
+
+	// Every display with an open window. One Swing timer repaints the
+	// dirty, visible ones. It stops itself on each tick and is started again
+	// by the next edit, so idle displays cost no CPU and no thread of their
+	// own.
+	private static final CopyOnWriteArrayList<DisplayableBinaryTree> SHOWN = new CopyOnWriteArrayList<DisplayableBinaryTree>();
+	private static final Timer REPAINTER = new Timer(10, new ActionListener() {
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			// Stop before reading the flags, so an edit made while this runs
+			// starts the timer again instead of being missed.
+			REPAINTER.stop();
+			boolean animating = false;
+			for (DisplayableBinaryTree display : SHOWN) {
+				if (!display.isOnScreen()) {
+					// Swing paints it anyway when it comes back
+					continue;
+				}
+				if (display.dirty || display.goingCrazy) {
+					display.dirty = false;
+					display.repaint();
+				}
+				animating |= display.goingCrazy;
+			}
+			if (animating) {
+				REPAINTER.start();
+			}
+		}
+	});
 
 	/**
 	 * Constructs a new displayable binary tree, set to default to the given window size for display..
@@ -85,43 +144,134 @@ public class DisplayableBinaryTree extends JComponent {
 		this.tree = tree;
 		// makes the size of the nodes oscillate
 		this.goingCrazy = Math.random() < 0.05;
-		this.show(visable);
-		Runnable repainter = new Runnable() {
+		// the mouse wheel zooms, dragging scrolls, a double click shows it all
+		MouseAdapter mouse = new MouseAdapter() {
+			private int dragX;
+
 			@Override
-			public void run() {
-				try {
-					while (true) {
-						Thread.sleep(10);
-						repaint();
-					}
-				} catch (InterruptedException exception) {
-					// Reports interrupt
+			public void mouseWheelMoved(MouseWheelEvent e) {
+				zoom(Math.pow(1.25, -e.getPreciseWheelRotation()), e.getX());
+			}
+
+			@Override
+			public void mousePressed(MouseEvent e) {
+				this.dragX = e.getX();
+				if (e.getClickCount() == 2) {
+					DisplayableBinaryTree.this.zoom = 1;
+					DisplayableBinaryTree.this.panX = 0;
+					repaint();
 				}
 			}
+
+			@Override
+			public void mouseDragged(MouseEvent e) {
+				DisplayableBinaryTree.this.panX += this.dragX - e.getX();
+				this.dragX = e.getX();
+				repaint();
+			}
 		};
-		new Thread(repainter).start();
+		this.addMouseListener(mouse);
+		this.addMouseMotionListener(mouse);
+		this.addMouseWheelListener(mouse);
+		this.show(visable);
+	}
+
+	/**
+	 * Constructs a display with no window, that only draws when paintTree is
+	 * called, for example into an image.
+	 */
+	DisplayableBinaryTree(EditTree tree, int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.tree = tree;
+		this.wrappers = new IdentityHashMap<Node, DisplayableNodeWrapper>();
 	}
 
 	public void show(boolean visable) {
+		synchronized (this) {
+			if (this.wrappers == null) {
+				this.wrappers = new IdentityHashMap<Node, DisplayableNodeWrapper>();
+			}
+		}
 		if (this.frame != null) {
+			this.frame.setVisible(visable);
 			this.frame.toFront();
+			SHOWN.addIfAbsent(this);
+			this.treeChanged();
 			return;
 		}
 		this.frame = new JFrame();
 		this.frame.setFocusable(true);
 		this.frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-		this.frame.setMinimumSize(new Dimension(this.tree.slowSize() * 20 + 18, this.tree.slowHeight() * 20 + 45));
+		this.frame.setMinimumSize(new Dimension(MIN_WIDTH, MIN_HEIGHT));
 		this.frame.setSize(new Dimension(this.width, this.height));
 		// set the background color to a stormy gray
 		this.frame.getContentPane().setBackground(BACKGROUND_COLOR);
 		// add the tree to the frame
 		this.frame.add(this);
 		this.frame.setVisible(visable);
-
+		SHOWN.addIfAbsent(this);
+		this.treeChanged();
 	}
 
+	/**
+	 * Closes the window. show() opens it again.
+	 */
 	public void close() {
+		SHOWN.remove(this);
 		this.frame.dispose();
+		synchronized (this) {
+			this.wrappers = null;
+			this.layoutRoot = null;
+			this.wholeLayout = true;
+		}
+	}
+
+	/**
+	 * Called by the tree after an edit that may have changed links anywhere,
+	 * so the next paint lays out the whole tree again. The repaint happens on
+	 * the next tick of the shared timer, so a burst of edits is drawn once.
+	 */
+	public void treeChanged() {
+		synchronized (this) {
+			this.wholeLayout = true;
+		}
+		this.repaintSoon();
+	}
+
+	/**
+	 * Called by the tree when it changes the child links of node. Only node
+	 * and the nodes it was found under last time are laid out again, so
+	 * after an add or a delete the next layout costs about the height of the
+	 * tree, not its size.
+	 *
+	 * @param node
+	 *            may be a node that was not in the tree at the last layout,
+	 *            or NULL_NODE, which are both ignored
+	 */
+	void linksChanged(Node node) {
+		synchronized (this) {
+			if (this.wrappers != null) {
+				DisplayableNodeWrapper wrapper = this.wrappers.get(node);
+				// the nodes above a dirty one are already dirty
+				while (wrapper != null && !wrapper.isDirty()) {
+					wrapper.setDirty();
+					wrapper = wrapper.getParent();
+				}
+			}
+		}
+		this.repaintSoon();
+	}
+
+	private void repaintSoon() {
+		this.dirty = true;
+		if (this.isOnScreen() && !REPAINTER.isRunning()) {
+			REPAINTER.start();
+		}
+	}
+
+	private boolean isOnScreen() {
+		return this.frame != null && this.frame.isShowing() && (this.frame.getExtendedState() & Frame.ICONIFIED) == 0;
 	}
 
 	/**
@@ -145,205 +295,293 @@ public class DisplayableBinaryTree extends JComponent {
 		this.width = this.frame.getWidth() - 18; // adjust for margins
 		this.height = this.frame.getHeight() - 45; // adjust for the margins
 
-		int treeHeight = this.tree.slowHeight();
-		int treeSize = this.tree.slowSize();
-		if (treeSize < 1) {
+		if (this.wrappers == null) {
 			return;
 		}
+		this.paintTree(g2);
+	}
 
-		this.xDistance = this.width / ((double) (treeSize)); // make the constant
-		this.circleRadius = this.xDistance / 2.0; // sets the circle diameter to the delta x distance
-		Dimension minSize = new Dimension((int) (treeSize * 20 + 18), (int) (treeHeight * 30 + 45));
-		if (minSize.getHeight() > 1080) {
-			minSize.setSize(minSize.getWidth(), 1080);
-		}
-		if (minSize.getWidth() > 1920) {
-			minSize.setSize(1920, minSize.getHeight());
+	/**
+	 * Draws the tree to fit the current width and height, laying out again
+	 * first whatever has changed.
+	 */
+	void paintTree(Graphics2D g2) {
+		this.layOutTree();
+		if (this.layoutRoot == null) {
+			return;
 		}
-		this.frame.setMinimumSize(minSize);
-		// System.out.println(treeSize);
-		// System.out.println(treeHeight);
-		this.circleRadius *= 1.25;
+		this.scale();
 		if (this.goingCrazy) {
 			this.angle += 0.0001;
 			// fun feature to see if students notice that the circles are changing size
 			this.circleRadius += 10 * Math.sin(3 * this.angle) + 2 * Math.cos(15 * this.angle);
 		}
-		this.xDistance = (this.width - this.circleRadius * 2) / ((double) (treeSize - 1));
-		// calculates the delta y distance by equally dividing up the height minus the circle diameter
-		this.yDistance = (this.height - 2 * circleRadius) / ((double) (treeHeight));
 
-		// start at the upper left corner
-		this.nodeX = this.circleRadius;
-		this.nodeY = this.circleRadius;
-
-		int size = 0;
-		// loops through font sizes, to get the right font size
-		while (true) {
-			// System.out.println(size);
-			FontMetrics metric = g2.getFontMetrics(new Font(FONT_NAME, Font.CENTER_BASELINE, size));
-			int height = metric.getHeight();
-			int width = metric.getMaxAdvance();
-			// times 1.5 works out nice
-			double multiplyer = 1.5;
-			// if the diagonal is 1.5 times the radius stop making it big`ger
-			if (Math.sqrt(height * height + width * width) > multiplyer * this.circleRadius) {
-				g2.setFont(new Font(FONT_NAME, Font.PLAIN, --size));
-				// System.out.println(g2.getFont().getSize());
-				break; // done
-			}
-			size++;
+		if (this.circleRadius != this.fontRadius) {
+			this.fontRadius = this.circleRadius;
+			this.font = fitFont(g2, this.circleRadius);
 		}
+		this.painter.setFont(g2, this.font);
 		// RAISE THE BAR VVVVV
 		g2.setColor(Color.blue); // blue looks so much better
-		g2.fill(new Rectangle2D.Double(this.width - 5, 50, 10, 5));
-		g2.fill(new Rectangle2D.Double(this.width - 10, 60, 20, 5));
-		g2.fill(new Rectangle2D.Double(this.width - 15, 70, 30, 5));
-		g2.fill(new Rectangle2D.Double(this.width - 20, 80, 40, 5));
-		g2.fill(new Rectangle2D.Double(this.width - 25, 90, 50, 5));
+		g2.fillRect(this.width - 5, 50, 10, 5);
+		g2.fillRect(this.width - 10, 60, 20, 5);
+		g2.fillRect(this.width - 15, 70, 30, 5);
+		g2.fillRect(this.width - 20, 80, 40, 5);
+		g2.fillRect(this.width - 25, 90, 50, 5);
 		// // RAISE THE BAR ^^^^^
-		DisplayableNodeWrapper current = this.tree.getRoot().getDisplayableNodePart();
-		// CURRENT.POINT = THE CENTER POINT, NOT THE UPPER LEFT CORNER
-		this.paintHelper(g2, current, this.nodeY);
-		this.lineHelper(g2, current);
-		// System.out.println("DONE");
+		this.paintHelper(g2, this.layoutRoot, 0, 0, 0, 0);
 	}
 
 	/**
-	 * helper method to paint nodes
-	 * 
-	 * @param g2
-	 * @param current
-	 * @param nodeY
+	 * Sets the node spacing and circle size for the window size and zoom. At
+	 * zoom 1 the whole tree fits across the window.
 	 */
-	private void paintHelper(Graphics2D g2, DisplayableNodeWrapper current, double nodeY) {
-		if (current.getNode().hasLeft()) {
-			this.paintHelper(g2, current.getLeft(), nodeY + this.yDistance); // recurse
+	private void scale() {
+		int treeSize = this.layoutSize();
+		double fitRadius = 1.25 * this.width / ((double) (treeSize)) / 2.0;
+		double fitDistance = (this.width - fitRadius * 2) / ((double) (treeSize - 1));
+		this.zoom = Math.max(1, Math.min(this.zoom, MAX_SPACING / fitDistance));
+		// circles grow with the zoom, but not past what fits MAX_RADIUS
+		this.circleRadius = Math.min(fitRadius * this.zoom, Math.max(fitRadius, MAX_RADIUS));
+		this.circleRadius = Math.max(this.circleRadius, MIN_RADIUS);
+		this.xDistance = fitDistance * this.zoom;
+		// calculates the delta y distance by equally dividing up the height minus the circle diameter
+		int treeHeight = DisplayableNodeWrapper.heightOf(this.layoutRoot);
+		this.yDistance = (treeHeight == 0) ? 0 : (this.height - 2 * this.circleRadius) / treeHeight;
+		double contentWidth = 2 * this.circleRadius + (treeSize - 1) * this.xDistance;
+		this.panX = Math.max(0, Math.min(this.panX, contentWidth - this.width));
+	}
+
+	/**
+	 * Zooms by factor, keeping the point under x where it is.
+	 */
+	private void zoom(double factor, int x) {
+		if (this.layoutSize() < 2) {
+			return;
 		}
-		// set up the node
-		current.setPoint(this.nodeX, nodeY);
-		current.setCircleRadius(this.circleRadius);
-		current.displayNode(g2); // display the node by passing the graphics2D
-		this.nodeX += this.xDistance;
-		if (current.getNode().hasRight()) {
-			this.paintHelper(g2, current.getRight(), nodeY + this.yDistance); // recurse
+		this.scale();
+		double index = (x + this.panX - this.circleRadius) / this.xDistance;
+		this.zoom *= factor;
+		this.scale();
+		this.panX = index * this.xDistance + this.circleRadius - x;
+		this.repaint();
+	}
+
+	/**
+	 * Zooms, as the mouse wheel would, and scrolls so that the node at the
+	 * given in-order index is in the middle of the window.
+	 */
+	void setView(double zoom, int index) {
+		this.layOutTree();
+		if (this.layoutSize() < 2) {
+			return;
 		}
+		this.zoom = zoom;
+		this.scale();
+		this.panX = this.circleRadius + index * this.xDistance - this.width / 2.0;
+	}
+
+	private double xOf(int index) {
+		return this.circleRadius + index * this.xDistance - this.panX;
+	}
+
+	private double yOf(int depth) {
+		return this.circleRadius + depth * this.yDistance;
 	}
 
 	/**
+	 * Paints the subtree below current, skipping the parts that are outside
+	 * the window. When the nodes are too close together to see, a subtree
+	 * narrower than SUMMARY_PIXELS is drawn as one triangle with its size and
+	 * height instead of node by node, so the cost of a paint follows what can
+	 * be seen, not the size of the tree.
 	 * 
 	 * @param g2
 	 * @param current
+	 * @param first
+	 *            in-order index of the first node below current
+	 * @param depth
+	 *            of current
+	 * @param fromX
+	 *            where the node current was found under is drawn
+	 * @param fromY
 	 */
-	private void lineHelper(Graphics2D g2, DisplayableNodeWrapper current) {
-		if (hasParents) {
-			if (current.getNode().hasParent()) {
-				this.drawParentArrow(g2, current);
-			}
+	private void paintHelper(Graphics2D g2, DisplayableNodeWrapper current, int first, int depth, double fromX,
+			double fromY) {
+		// (x, y) = THE CENTER POINT, NOT THE UPPER LEFT CORNER
+		DisplayableNodeWrapper left = current.getLeft();
+		DisplayableNodeWrapper right = current.getRight();
+		int index = first + DisplayableNodeWrapper.sizeOf(left);
+		int last = first + current.getSize() - 1;
+		double x = this.xOf(index);
+		double y = this.yOf(depth);
+		if (this.xOf(last) + this.circleRadius < 0 || this.xOf(first) - this.circleRadius > this.width) {
+			return;
+		}
+		if (this.xDistance < NODE_PIXELS && first != last && (last - first + 1) * this.xDistance < SUMMARY_PIXELS) {
+			this.painter.drawSummary(g2, x, y, this.xOf(first), this.xOf(last), this.yOf(depth + current.getHeight()),
+					last - first + 1, current.getHeight());
+			return;
+		}
+		if (left != null) {
+			this.paintHelper(g2, left, first, depth + 1, x, y); // recurse
+			this.painter.drawFowardArrow(g2, x, y, this.xOf(first + DisplayableNodeWrapper.sizeOf(left.getLeft())),
+					this.yOf(depth + 1), this.circleRadius);
 		}
-		// only if has left child
-		if (current.getLeft() != null) {
-			// draw line arrow
-			this.drawFowardArrow(g2, current.getPoint(), current.getLeft().getPoint());
-			this.lineHelper(g2, current.getLeft()); // recurse
+		if (right != null) {
+			this.paintHelper(g2, right, index + 1, depth + 1, x, y); // recurse
+			this.painter.drawFowardArrow(g2, x, y,
+					this.xOf(index + 1 + DisplayableNodeWrapper.sizeOf(right.getLeft())), this.yOf(depth + 1),
+					this.circleRadius);
 		}
-		// only if has right child
-		if (current.getRight() != null) {
-			// draw line arrow
-			this.drawFowardArrow(g2, current.getPoint(), current.getRight().getPoint());
-			this.lineHelper(g2, current.getRight()); // recurse
+		Node node = current.getNode();
+		if (hasParents && node.hasParent()) {
+			Node parent = node.getParent();
+			DisplayableNodeWrapper from = current.getParent();
+			if (from != null && parent == from.getNode()) {
+				this.painter.drawParentArrow(g2, x, y, fromX, fromY, this.circleRadius, true);
+			} else if (this.locate(parent)) {
+				// a wrong parent link points wherever that node is drawn
+				this.painter.drawParentArrow(g2, x, y, this.xOf(this.locatedIndex), this.yOf(this.locatedDepth),
+						this.circleRadius, node == parent.getLeft() || node == parent.getRight());
+			}
 		}
+		// display the node by passing the graphics2D
+		this.painter.drawNode(g2, node, x, y, this.circleRadius);
 	}
 
 	/**
-	 * makes the frame take an arrow to the knee
+	 * Finds where the last layout put node, by climbing from its wrapper to
+	 * the root and counting the nodes to the left of each step. Only needed
+	 * to draw a parent link that is wrong, so it does not have to be fast.
 	 * 
-	 * @param g2
-	 *            graphics
-	 * @param start
-	 *            center point of the parent
-	 * @param end
-	 *            center point of the child
+	 * @return false if node was not in the tree at the last layout
 	 */
-	private void drawParentArrow(Graphics2D g2, DisplayableNodeWrapper node) {
-		Point2D.Double start = node.getPoint();
-		Point2D.Double end = node.getParent().getPoint();
-		g2.setColor(PARENT_ARROW_COLOR);
-		double SIZE_MULTIPLIER = 1.5;
-		AffineTransform transform = g2.getTransform(); // save graphics state to restore later
-		double angle = 0;
-		try {
-			angle = Math.atan2(end.getY() - start.getY(), end.getX() - start.getX());
-		} catch (NullPointerException e) {
-			// eh, this probability doesn't matter that much
-			return;
+	private boolean locate(Node node) {
+		DisplayableNodeWrapper current = this.wrappers.get(node);
+		if (current == null) {
+			return false;
 		}
-		g2.translate(end.getX(), end.getY()); // move the center of the child node
-		g2.rotate(angle + Math.PI / 2.0); // rotate
-		// move the edge of the circle
-		g2.translate(0, this.circleRadius);
-		double arrowLength = start.distance(end) - 2 * this.circleRadius; // distance is from edge to edge
-		double arrowLengthSqrt = Math.sqrt(arrowLength); // scales better with the sqrt
-		Node dataNode = node.getNode();
-		if (dataNode == dataNode.getParent().getLeft() || dataNode == dataNode.getParent().getRight()) {
-			Line2D.Double line = new Line2D.Double(0, 0, 0, arrowLength - arrowLengthSqrt * 2);
-			g2.draw(line);
+		int index = DisplayableNodeWrapper.sizeOf(current.getLeft());
+		int depth = 0;
+		for (DisplayableNodeWrapper parent = current.getParent(); parent != null; parent = parent.getParent()) {
+			if (current == parent.getRight()) {
+				index += DisplayableNodeWrapper.sizeOf(parent.getLeft()) + 1;
+			} else if (current != parent.getLeft()) {
+				// left over from a node that has been deleted
+				return false;
+			}
+			current = parent;
+			depth++;
 		}
+		this.locatedIndex = index;
+		this.locatedDepth = depth;
+		return current == this.layoutRoot;
+	}
 
-		Path2D.Double arrowHead = new Path2D.Double(); // paths are cool
-		// draws the arrow head
-		arrowHead.moveTo(0, 0);
-		arrowHead.lineTo(-arrowLengthSqrt / SIZE_MULTIPLIER, 2 * arrowLengthSqrt / SIZE_MULTIPLIER);
-		arrowHead.lineTo(arrowLengthSqrt / SIZE_MULTIPLIER, 2 * arrowLengthSqrt / SIZE_MULTIPLIER);
-		arrowHead.closePath();
+	/**
+	 * @return the in-order index the last layout gave node, or -1 if it was
+	 *         not in the tree
+	 */
+	int indexOf(Node node) {
+		return this.locate(node) ? this.locatedIndex : -1;
+	}
 
-		g2.fill(arrowHead);
-		g2.setTransform(transform); // restores the graphics state
+	/**
+	 * @return the depth the last layout gave node, or -1 if it was not in the
+	 *         tree
+	 */
+	int depthOf(Node node) {
+		return this.locate(node) ? this.locatedDepth : -1;
 	}
 
 	/**
-	 * makes the frame take an arrow to the knee
-	 * 
-	 * @param g2
-	 *            graphics
-	 * @param start
-	 *            center point of the parent
-	 * @param end
-	 *            center point of the child
+	 * Brings the layout up to date with the tree: all of it after
+	 * treeChanged(), otherwise only the wrappers that linksChanged() marked.
+	 * Like slowSize() and slowHeight(), this only follows the links, so it
+	 * still draws the tree right when ranks or balance codes are wrong.
 	 */
-	private void drawFowardArrow(Graphics2D g2, Point2D.Double start, Point2D.Double end) {
-		g2.setColor(FOWARD_ARROW_COLOR);
-		AffineTransform transform = g2.getTransform(); // save graphics state to restore later
-		// get the correct rotation angle
-		if (end == null || start == null) {
-			System.out.println("NULL ANGLE");
-		}
-		double angle = 0;
-		try {
-			angle = Math.atan2(end.getY() - start.getY(), end.getX() - start.getX());
-		} catch (NullPointerException e) {
-			// silently ignore, cause you know, YOLO
+	synchronized void layOutTree() {
+		if (this.wrappers == null) {
 			return;
 		}
-		g2.translate(end.getX(), end.getY()); // move the center of the child node
-		g2.rotate(angle + Math.PI / 2.0); // rotate
-		g2.translate(0, this.circleRadius); // move the edge of the circle
-		double arrowLength = start.distance(end) - 2 * this.circleRadius; // distance is from edge to edge
-		Line2D.Double line = new Line2D.Double(0, 0, 0, arrowLength);
-		g2.draw(line);
-
-		Path2D.Double arrowHead = new Path2D.Double(); // paths are cool
-		double arrowLengthSqrt = Math.sqrt(arrowLength); // scales better with the sqrt
-		// draws the arrow head
-		arrowHead.moveTo(0, 0);
-		arrowHead.lineTo(-arrowLengthSqrt, arrowLengthSqrt * 2);
-		arrowHead.lineTo(arrowLengthSqrt, arrowLengthSqrt * 2);
-		arrowHead.closePath();
-
-		g2.fill(arrowHead);
-		g2.setTransform(transform); // restores the graphics state
+		// wrappers of deleted nodes are only dropped by a whole layout
+		if (this.wrappers.size() > 2 * this.layoutSize() + 64) {
+			this.wholeLayout = true;
+		}
+		boolean whole = this.wholeLayout;
+		this.wholeLayout = false;
+		if (whole) {
+			this.layoutStamp++;
+		}
+		Node root = this.tree.getRoot();
+		this.layoutRoot = (root == EditTree.NULL_NODE) ? null : this.layOut(root, null, whole);
+		if (whole && this.wrappers.size() > this.layoutSize()) {
+			Iterator<DisplayableNodeWrapper> iterator = this.wrappers.values().iterator();
+			while (iterator.hasNext()) {
+				if (iterator.next().getStamp() != this.layoutStamp) {
+					iterator.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Lays out the subtree below node, which hangs from parent. A wrapper that
+	 * is not dirty already knows its subtree, unless this is a whole layout.
+	 */
+	private DisplayableNodeWrapper layOut(Node node, DisplayableNodeWrapper parent, boolean whole) {
+		DisplayableNodeWrapper current = this.wrappers.get(node);
+		if (current == null) {
+			current = new DisplayableNodeWrapper(node);
+			this.wrappers.put(node, current);
+		}
+		current.setParent(parent);
+		if (whole) {
+			current.setStamp(this.layoutStamp);
+		} else if (!current.isDirty()) {
+			return current;
+		}
+		DisplayableNodeWrapper left = null;
+		DisplayableNodeWrapper right = null;
+		if (node.hasLeft()) {
+			left = this.layOut(node.getLeft(), current, whole); // recurse
+		}
+		if (node.hasRight()) {
+			right = this.layOut(node.getRight(), current, whole); // recurse
+		}
+		current.setChildren(left, right);
+		return current;
+	}
+
+	/**
+	 * @return the number of nodes in the last layout
+	 */
+	int layoutSize() {
+		return DisplayableNodeWrapper.sizeOf(this.layoutRoot);
 	}
 
+	/**
+	 * @return the biggest font whose letters fit in a circle of the given
+	 *         radius
+	 */
+	static Font fitFont(Graphics2D g2, double radius) {
+		int size = 0;
+		// loops through font sizes, to get the right font size
+		while (true) {
+			FontMetrics metric = g2.getFontMetrics(new Font(FONT_NAME, Font.CENTER_BASELINE, size));
+			int height = metric.getHeight();
+			int width = metric.getMaxAdvance();
+			// times 1.5 works out nice
+			double multiplyer = 1.5;
+			// if the diagonal is 1.5 times the radius stop making it bigger
+			if (Math.sqrt(height * height + width * width) > multiplyer * radius) {
+				return new Font(FONT_NAME, Font.PLAIN, --size);
+			}
+			size++;
+		}
+	}
 	/**
 	 * returns a string that gives the given time difference in easily read time units
 	 * 
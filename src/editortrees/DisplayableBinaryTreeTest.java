@@ -0,0 +1,96 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import editortrees.Node.Code;
+
+/**
+ * Tests for where DisplayableBinaryTree puts the nodes, with no window.
+ */
+public class DisplayableBinaryTreeTest {
+
+	/**
+	 * Adds the nodes below node to nodes in order, and their depths to depths.
+	 */
+	private void inOrder(Node node, int depth, ArrayList<Node> nodes, ArrayList<Integer> depths) {
+		if (node == EditTree.NULL_NODE) {
+			return;
+		}
+		inOrder(node.left, depth + 1, nodes, depths);
+		nodes.add(node);
+		depths.add(depth);
+		inOrder(node.right, depth + 1, nodes, depths);
+	}
+
+	/**
+	 * Checks that the display puts the i-th node found by following the links
+	 * at index i and at the depth the links give it, so no two nodes share a
+	 * place.
+	 */
+	private void checkLayout(EditTree t, DisplayableBinaryTree display) {
+		ArrayList<Node> nodes = new ArrayList<Node>();
+		ArrayList<Integer> depths = new ArrayList<Integer>();
+		inOrder(t.getRoot(), 0, nodes, depths);
+		assertEquals(nodes.size(), display.layoutSize());
+		for (int i = 0; i < nodes.size(); i++) {
+			assertEquals(i, display.indexOf(nodes.get(i)));
+			assertEquals((int) depths.get(i), display.depthOf(nodes.get(i)));
+		}
+	}
+
+	private void paint(DisplayableBinaryTree display) {
+		BufferedImage image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g2 = image.createGraphics();
+		display.paintTree(g2);
+		g2.dispose();
+	}
+
+	@Test
+	public void testWrongRanksAndBalanceCodesAreDrawnByLinks() {
+		EditTree t = new EditTree("abcdefghijklmnopqrstuvwxyz0123456789");
+		Node root = t.getRoot();
+		root.rank = 0;
+		root.left.rank = 30;
+		root.right.balance = (root.right.balance == Code.LEFT) ? Code.RIGHT : Code.LEFT;
+		root.right.right.rank = -5;
+		root.left.left.balance = Code.LEFT;
+		DisplayableBinaryTree display = new DisplayableBinaryTree(t, 800, 600);
+		paint(display);
+		checkLayout(t, display);
+	}
+
+	@Test
+	public void testLayoutKeepsUpWithEdits() {
+		EditTree t = new EditTree();
+		DisplayableBinaryTree display = new DisplayableBinaryTree(t, 800, 600);
+		t.setDisplay(display);
+		Random random = new Random(3);
+		for (int i = 0; i < 2000; i++) {
+			if (t.size() > 0 && random.nextInt(3) == 0) {
+				t.delete(random.nextInt(t.size()));
+			} else {
+				t.add((char) ('a' + random.nextInt(26)), random.nextInt(t.size() + 1));
+			}
+			if (i % 7 == 0) {
+				display.layOutTree();
+				checkLayout(t, display);
+			}
+		}
+		paint(display);
+		checkLayout(t, display);
+		// edits that change many links lay out the whole tree
+		t.concatenate(t.split(t.size() / 3));
+		display.layOutTree();
+		checkLayout(t, display);
+		t.delete(10, t.size() / 2);
+		display.layOutTree();
+		checkLayout(t, display);
+	}
+}
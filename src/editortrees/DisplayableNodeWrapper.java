@@ -1,185 +1,131 @@
 package editortrees;
 
-import java.awt.Color;
-import java.awt.Graphics2D;
-import java.awt.Point;
-import java.awt.geom.Ellipse2D;
-import java.awt.geom.Rectangle2D;
-
 /*
  * REQUIRES:
- * node.getRank()
- * node.getBalance()
- * node.getBalance().toString()
- * node.getElement()
+ * node.hasLeft()
+ * node.hasRight()
+ * node.getLeft()
+ * node.getRight()
  */
 
+/**
+ * What the display remembers about one node between paints: the wrappers of
+ * its children and of the node it was found under, and the size and height of
+ * its subtree. All of it is found by following the child links, never from
+ * rank or balance codes, so a tree with wrong ones is still drawn as it
+ * really is. Only the wrappers of nodes whose links changed are worked out
+ * again.
+ */
 public class DisplayableNodeWrapper {
 	// *****************************************************************************
-	private static Color CIRCLE_COLOR = Color.WHITE;
-	// lightish green to keep in line with our stormy color scheme
-	private static Color TEXT_COLOR = new Color(0x66FFB2);
-	private Point.Double point;
-	private double radius;
 	private Node node;
-	 
+	private DisplayableNodeWrapper left;
+	private DisplayableNodeWrapper right;
+	private DisplayableNodeWrapper parent;
+	// number of nodes and height of the subtree, counted by the links
+	private int size;
+	private int height;
+	// true when the links below this node may have changed since the last
+	// layout; then so may the links below its parent
+	private boolean dirty = true;
+	// the last full layout that found this node in the tree
+	private int stamp;
+
 	// ******************************************************************************
 
 	/**
-	 * only sets the graphical related fields
-	 * 
 	 * @param node
 	 */
 	public DisplayableNodeWrapper(Node node) {
-		 
-		this.point = null;
-		this.radius = -10;
 		this.node = node;
 	}
 
+	public Node getNode() {
+		return this.node;
+	}
+
 	/**
 	 * gets the displayable part of the left child
-	 * 
-	 * @return
+	 *
+	 * @return null if there is no left child
 	 */
 	public DisplayableNodeWrapper getLeft() {
-		if (this.node.left != null) {
-			return this.node.left.getDisplayableNodePart();
-		}
-		return null;
+		return this.left;
 	}
 
 	/**
 	 * gets the displayable part of the right child
-	 * 
-	 * @return
+	 *
+	 * @return null if there is no right child
 	 */
 	public DisplayableNodeWrapper getRight() {
-		if (this.node.right != null) {
-			return this.node.right.getDisplayableNodePart();
-		}
-		return null;
+		return this.right;
 	}
 
 	/**
-	 * gets the displayable part of the parent
-	 * 
-	 * @return
+	 * gets the displayable part of the node this one was found under
+	 *
+	 * @return null for the root
 	 */
 	public DisplayableNodeWrapper getParent() {
-		return this.node.getParent().getDisplayableNodePart();
+		return this.parent;
 	}
 
-	public Node getNode() {
-		return this.node;
+	public void setParent(DisplayableNodeWrapper parent) {
+		this.parent = parent;
 	}
 
 	/**
-	 * sets this.point to the new point
-	 * 
-	 * @param x
-	 * @param y
+	 * Sets the children, and the size and height of the subtree from theirs.
+	 *
+	 * @param left
+	 *            null if there is no left child
+	 * @param right
+	 *            null if there is no right child
 	 */
-	public void setPoint(double x, double y) {
-		this.point = new Point.Double(x, y);
+	public void setChildren(DisplayableNodeWrapper left, DisplayableNodeWrapper right) {
+		this.left = left;
+		this.right = right;
+		this.size = 1 + sizeOf(left) + sizeOf(right);
+		this.height = 1 + Math.max(heightOf(left), heightOf(right));
+		this.dirty = false;
 	}
 
 	/**
-	 * sets this.point to the new point
-	 * 
-	 * @param newPoint
+	 * @return the number of nodes below wrapper, 0 for null
 	 */
-	public void setPoint(Point.Double newPoint) {
-		this.point = newPoint;
+	public static int sizeOf(DisplayableNodeWrapper wrapper) {
+		return (wrapper == null) ? 0 : wrapper.size;
 	}
 
 	/**
-	 * @returns this.point
+	 * @return the height of wrapper, -1 for null
 	 */
-	public Point.Double getPoint() {
-		return this.point;
+	public static int heightOf(DisplayableNodeWrapper wrapper) {
+		return (wrapper == null) ? -1 : wrapper.height;
 	}
 
-	/**
-	 * sets this.radius
-	 * 
-	 * @param newRadius
-	 */
-	public void setCircleRadius(double newRadius) {
-		this.radius = newRadius;
+	public int getSize() {
+		return this.size;
 	}
 
-	/**
-	 * 
-	 * @returns this.radius
-	 */
-	public double getCircleRadius() {
-		return this.radius;
+	public int getHeight() {
+		return this.height;
 	}
 
-	/**
-	 * REQUIRES the point to already been set draws the node on the current
-	 * Graphics2D object
-	 * 
-	 * @param g2
-	 */
-	public void displayNode(Graphics2D g2) {
-		// sets the circle outline color
-		g2.setColor(CIRCLE_COLOR);
-		// creates circle taking into account that this.point is the centerPoint
-		Ellipse2D circle = new Ellipse2D.Double(this.point.x - this.radius, this.point.y - this.radius, this.radius * 2,
-				this.radius * 2);
-		g2.draw(circle);
-		// sets the text color
-		g2.setColor(TEXT_COLOR);
-
-		// finds how much to shift the string to center the letter
-		String rank = this.node.getRank() + "";
-		Rectangle2D bounds = g2.getFontMetrics().getStringBounds(rank, g2);
-		int upperLeftX = (int) (this.point.x - bounds.getWidth() / 2);
-		int upperLeftY = (int) (this.point.y - 1 * bounds.getHeight() / 3); // don't
-																			// know
-																			// why
-																			// this
-																			// 1/3
-																			// works
-																			// so
-																			// good
-		g2.drawString(rank, upperLeftX, upperLeftY);
-		// System.out.println(this.balance);
-
-		String balance;
-		if (this.node.getBalance() == null) {
-			// System.out.println("bad");
-			balance = "null";
-		} else {
-			balance = this.node.getBalance().toString();
-		}
-		bounds = g2.getFontMetrics().getStringBounds(balance, g2);
-		upperLeftX = (int) (this.point.x - bounds.getWidth() / 2);
-		upperLeftY = (int) (this.point.y + 1 * bounds.getHeight() / 4); // don't
-																		// know
-																		// why
-																		// this
-																		// 1/3
-																		// works
-																		// so
-																		// good
-		g2.drawString(balance, upperLeftX, upperLeftY);
-
-		String text = String.valueOf(this.node.getElement());
-		bounds = g2.getFontMetrics().getStringBounds(text, g2);
-		upperLeftX = (int) (this.point.x - bounds.getWidth() / 2);
-		upperLeftY = (int) (this.point.y + 5 * bounds.getHeight() / 6); // don't
-																		// know
-																		// why
-																		// this
-																		// 1/3
-																		// works
-																		// so
-																		// good
-		g2.drawString(text, upperLeftX, upperLeftY);
+	public boolean isDirty() {
+		return this.dirty;
+	}
+
+	public void setDirty() {
+		this.dirty = true;
+	}
 
+	public int getStamp() {
+		return this.stamp;
 	}
 
+	public void setStamp(int stamp) {
+		this.stamp = stamp;
+	}
 }
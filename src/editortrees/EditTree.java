@@ -1,28 +1,45 @@
 package editortrees;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.BufferOverflowException;
+import java.nio.CharBuffer;
+import java.nio.ReadOnlyBufferException;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.Queue;
 import java.util.Stack;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
-import editortrees.Node.DeleteWrapper;
-import editortrees.Node.Wrapper;
+import editortrees.Node.Code;
 
 // A height-balanced binary tree with rank that could be the basis for a text editor.
+// It is also a CharSequence, so it can be handed to regexes and parsers
+// without copying it into a String first, and a TextTree, like the chunked and
+// array-based trees.
 
-public class EditTree {
+public class EditTree implements TextTree<EditTree> {
 
+	// Only made by show(), so that trees that are never shown do not load
+	// AWT or Swing.
 	private DisplayableBinaryTree display;
 	private Node root;
 	public static final Node NULL_NODE = new Node();
+	// Kept up to date by every edit, so that size(), height() and
+	// totalRotationCount() do not have to look at the nodes.
+	private int size = 0;
+	private int height = -1;
 	private int numberOfRotation = 0;
+	// how many characters writeTo copies out at a time
+	private static final int WRITE_CHUNK = 8192;
 
 	/**
 	 * MILESTONE 1 Construct an empty tree
 	 */
 	public EditTree() {
 		this.root = NULL_NODE;
-		this.display = new DisplayableBinaryTree(this, 0, 0, false);
 	}
 
 	/**
@@ -32,7 +49,8 @@ public class EditTree {
 	 */
 	public EditTree(char ch) {
 		this.root = new Node(ch);
-		this.display = new DisplayableBinaryTree(this, 0, 0, false);
+		this.size = 1;
+		this.height = 0;
 	}
 
 	/**
@@ -50,6 +68,8 @@ public class EditTree {
 		}
 		Node temp = e.getRoot().copy();
 		this.root = temp;
+		this.size = e.size;
+		this.height = e.height;
 
 	}
 
@@ -70,18 +90,13 @@ public class EditTree {
 			for (int i = 0; i < size; i++) {
 				Node head = queue.poll();
 
-				level.add(head.element);
-				if (head.element != '0') {
-					if (head.left != NULL_NODE) {
-						queue.offer(head.left);
-					} else {
-						queue.offer(new Node('0'));
-					}
-					if (head.right != NULL_NODE) {
-						queue.offer(head.right);
-					} else {
-						queue.offer(new Node('0'));
-					}
+				// NULL_NODE stands for a missing child, shown as '0'
+				if (head == NULL_NODE) {
+					level.add('0');
+				} else {
+					level.add(head.element);
+					queue.offer(head.left);
+					queue.offer(head.right);
 				}
 			}
 			result.add(level);
@@ -98,7 +113,118 @@ public class EditTree {
 	 * @param s
 	 */
 	public EditTree(String s) {
+		this((CharSequence) s);
+	}
+
+	/**
+	 * Create an EditTree whose toString is the given characters, in O(N) time.
+	 * 
+	 * @param chars
+	 */
+	public EditTree(char[] chars) {
+		this(CharBuffer.wrap(chars));
+	}
+
+	/**
+	 * Create an EditTree whose toString is text, in O(N) time. Nothing is
+	 * rotated: the middle character becomes the root and each half is built
+	 * the same way, so ranks and balance codes are known as the nodes are
+	 * made.
+	 * 
+	 * @param text
+	 */
+	public EditTree(CharSequence text) {
+		this(text, false);
+	}
+
+	/**
+	 * Create an EditTree whose toString is text. When parallel is true, the
+	 * two halves of every large enough range are built at the same time on
+	 * the common ForkJoinPool, which is worth it for inputs of many
+	 * megabytes. The tree is the same either way. text must not change while
+	 * the tree is built.
+	 * 
+	 * @param text
+	 * @param parallel
+	 */
+	public EditTree(CharSequence text, boolean parallel) {
+		if (parallel) {
+			this.root = ForkJoinPool.commonPool().invoke(new BuildTask(text, 0, text.length() - 1));
+		} else {
+			this.root = build(text, 0, text.length() - 1);
+		}
+		this.size = text.length();
+		this.height = builtHeight(text.length());
+	}
+
+	private static Node build(CharSequence text, int low, int high) {
+		if (low > high) {
+			return NULL_NODE;
+		}
+		int mid = (low + high) >>> 1;
+		return buildParent(text, low, mid, high, build(text, low, mid - 1), build(text, mid + 1, high));
+	}
+
+	/**
+	 * Builds a range of the text like build(), but forks the left half off as
+	 * its own task while this one builds the right half. Small ranges are not
+	 * worth a task and are built directly.
+	 */
+	private static class BuildTask extends RecursiveTask<Node> {
+		private static final long serialVersionUID = 1L;
+		private static final int SEQUENTIAL_SIZE = 1 << 15;
+		private final CharSequence text;
+		private final int low;
+		private final int high;
+
+		public BuildTask(CharSequence text, int low, int high) {
+			this.text = text;
+			this.low = low;
+			this.high = high;
+		}
+
+		@Override
+		protected Node compute() {
+			if (this.high - this.low < SEQUENTIAL_SIZE) {
+				return build(this.text, this.low, this.high);
+			}
+			int mid = (this.low + this.high) >>> 1;
+			BuildTask leftTask = new BuildTask(this.text, this.low, mid - 1);
+			leftTask.fork();
+			Node right = new BuildTask(this.text, mid + 1, this.high).compute();
+			Node left = leftTask.join();
+			return buildParent(this.text, this.low, mid, this.high, left, right);
+		}
+	}
+
+	/**
+	 * Makes the node for the middle character of the range low..high and
+	 * hangs the already built halves of the range under it.
+	 */
+	private static Node buildParent(CharSequence text, int low, int mid, int high, Node left, Node right) {
+		Node node = new Node(text.charAt(mid));
+		node.left = left;
+		node.right = right;
+		if (node.left != NULL_NODE) {
+			node.left.parent = node;
+		}
+		if (node.right != NULL_NODE) {
+			node.right.parent = node;
+		}
+		node.rank = mid - low;
+		// The right half is never smaller than the left one.
+		if (builtHeight(high - mid) > builtHeight(mid - low)) {
+			node.balance = Code.RIGHT;
+		}
+		return node;
+	}
 
+	/**
+	 * @return the height of a tree of the given size made by build(), which
+	 *         is as short as a tree of that size can be.
+	 */
+	private static int builtHeight(int size) {
+		return 31 - Integer.numberOfLeadingZeros(size);
 	}
 
 	/**
@@ -108,58 +234,192 @@ public class EditTree {
 	 * @return number of rotations since tree was created.
 	 */
 	public int totalRotationCount() {
-		return root.totalRotationCount() + this.numberOfRotation;
+		return this.numberOfRotation;
 	}
 
 	/**
 	 * MILESTONE 1 return the string produced by an inorder traversal of this
-	 * tree
+	 * tree. The characters are copied straight into an array of the right
+	 * size, so this is O(n).
 	 */
 	@Override
 	public String toString() {
-		String result = "";
-		if (this.root == NULL_NODE) {
+		return this.get(0, this.size);
+	}
+
+	/**
+	 * Same as toString(), but when parallel is true large subtrees are copied
+	 * at the same time on the common ForkJoinPool, as toCharArray(true) does.
+	 * 
+	 * @param parallel
+	 */
+	public String toString(boolean parallel) {
+		return new String(this.toCharArray(parallel));
+	}
+
+	/**
+	 * @return a new array of the characters of this tree, in order. When
+	 *         parallel is true, the two subtrees of every large enough node
+	 *         are copied at the same time on the common ForkJoinPool. A node's
+	 *         rank says exactly where its subtree's characters go, so the
+	 *         tasks write to separate parts of one array. This is worth it
+	 *         for documents of many megabytes. The tree must not change while
+	 *         it is copied.
+	 * @param parallel
+	 */
+	public char[] toCharArray(boolean parallel) {
+		char[] result = new char[this.size];
+		if (this.size == 0) {
 			return result;
 		}
-		ArrayList<Character> a = toInorderList(this.root);
-		for (Character ch : a) {
-			result += ch;
+		if (parallel) {
+			ForkJoinPool.commonPool().invoke(new CopyTask(this.root, this.size, result, 0));
+		} else {
+			copy(this.nodeAt(0), result, 0, this.size);
 		}
 		return result;
 	}
 
-	private ArrayList<Character> toInorderList(Node node) {
-		Stack<Node> stack = new Stack<Node>();
-		ArrayList<Character> result = new ArrayList<Character>();
-		Node temp = root;
-		while (temp != NULL_NODE || !stack.empty()) {
-			while (temp != NULL_NODE) {
-				stack.add(temp);
-				temp = temp.left;
+	/**
+	 * Copies the size characters of the subtree below node into chars from
+	 * offset on. Forks the left subtree off as its own task while this one
+	 * copies the right one. Small subtrees are not worth a task and are copied
+	 * directly.
+	 */
+	private static class CopyTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private static final int SEQUENTIAL_SIZE = 1 << 15;
+		private final Node node;
+		private final int size;
+		private final char[] chars;
+		private final int offset;
+
+		public CopyTask(Node node, int size, char[] chars, int offset) {
+			this.node = node;
+			this.size = size;
+			this.chars = chars;
+			this.offset = offset;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.size < SEQUENTIAL_SIZE) {
+				Node first = this.node;
+				while (first.left != NULL_NODE) {
+					first = first.left;
+				}
+				copy(first, this.chars, this.offset, this.size);
+				return;
 			}
-			temp = stack.peek();
-			stack.pop();
-			result.add(temp.element);
-			temp = temp.right;
+			int rank = this.node.rank;
+			CopyTask leftTask = new CopyTask(this.node.left, rank, this.chars, this.offset);
+			leftTask.fork();
+			this.chars[this.offset + rank] = this.node.element;
+			new CopyTask(this.node.right, this.size - rank - 1, this.chars, this.offset + rank + 1).compute();
+			leftTask.join();
 		}
-		return result;
 	}
 
-	private ArrayList<Node> toInorderListNode(Node node) {
-		Stack<Node> stack = new Stack<Node>();
-		ArrayList<Node> result = new ArrayList<Node>();
-		Node temp = root;
-		while (temp != NULL_NODE || !stack.empty()) {
-			while (temp != NULL_NODE) {
-				stack.add(temp);
-				temp = temp.left;
-			}
-			temp = stack.peek();
-			stack.pop();
-			result.add(temp);
-			temp = temp.right;
+	/**
+	 * Writes the string produced by an inorder traversal of this tree to out,
+	 * WRITE_CHUNK characters at a time, so the whole text is never copied at
+	 * once.
+	 * 
+	 * @param out
+	 * @throws IOException
+	 *             if out throws one
+	 */
+	public void writeTo(Appendable out) throws IOException {
+		if (out instanceof Writer) {
+			this.writeTo((Writer) out);
+			return;
+		}
+		if (out instanceof CharBuffer) {
+			this.writeTo((CharBuffer) out);
+			return;
+		}
+		if (this.size == 0) {
+			return;
+		}
+		char[] chunk = new char[Math.min(WRITE_CHUNK, this.size)];
+		CharBuffer wrapped = CharBuffer.wrap(chunk);
+		Node current = this.nodeAt(0);
+		for (int written = 0; written < this.size; written += chunk.length) {
+			int count = Math.min(chunk.length, this.size - written);
+			current = copy(current, chunk, 0, count);
+			out.append(wrapped, 0, count);
 		}
-		return result;
+	}
+
+	/**
+	 * Same as writeTo(Appendable), writing whole chunks with write(char[],
+	 * int, int).
+	 * 
+	 * @param out
+	 * @throws IOException
+	 *             if out throws one
+	 */
+	public void writeTo(Writer out) throws IOException {
+		if (this.size == 0) {
+			return;
+		}
+		char[] chunk = new char[Math.min(WRITE_CHUNK, this.size)];
+		Node current = this.nodeAt(0);
+		for (int written = 0; written < this.size; written += chunk.length) {
+			int count = Math.min(chunk.length, this.size - written);
+			current = copy(current, chunk, 0, count);
+			out.write(chunk, 0, count);
+		}
+	}
+
+	/**
+	 * Puts the string produced by an inorder traversal of this tree into out,
+	 * starting at its position, which moves to just after it.
+	 * 
+	 * @param out
+	 * @throws BufferOverflowException
+	 *             if out has less than size() characters left, in which case
+	 *             nothing is written
+	 * @throws ReadOnlyBufferException
+	 *             if out is read only
+	 */
+	public void writeTo(CharBuffer out) throws BufferOverflowException, ReadOnlyBufferException {
+		if (out.isReadOnly()) {
+			throw new ReadOnlyBufferException();
+		}
+		if (out.remaining() < this.size) {
+			throw new BufferOverflowException();
+		}
+		if (this.size == 0) {
+			return;
+		}
+		if (out.hasArray()) {
+			// copy straight into the array behind the buffer
+			copy(this.nodeAt(0), out.array(), out.arrayOffset() + out.position(), this.size);
+			out.position(out.position() + this.size);
+			return;
+		}
+		char[] chunk = new char[Math.min(WRITE_CHUNK, this.size)];
+		Node current = this.nodeAt(0);
+		for (int written = 0; written < this.size; written += chunk.length) {
+			int count = Math.min(chunk.length, this.size - written);
+			current = copy(current, chunk, 0, count);
+			out.put(chunk, 0, count);
+		}
+	}
+
+	/**
+	 * Copies count characters into chunk from offset on, going in order from
+	 * node.
+	 * 
+	 * @return the node after the last one copied
+	 */
+	private static Node copy(Node node, char[] chunk, int offset, int count) {
+		for (int i = offset; i < offset + count; i++) {
+			chunk[i] = node.element;
+			node = successor(node);
+		}
+		return node;
 	}
 
 	/**
@@ -225,7 +485,7 @@ public class EditTree {
 		// you!
 		// 2. Unit tests are cumulative, and many things are based on add(), so
 		// make sure that you get this one correct.
-		add(ch, this.size());
+		add(ch, this.size);
 	}
 
 	/**
@@ -239,12 +499,184 @@ public class EditTree {
 	 *             id pos is negative or too large for this tree
 	 */
 	public void add(char ch, int pos) throws IndexOutOfBoundsException {
-		if (pos < 0 || pos > this.size()) {
+		if (pos < 0 || pos > this.size) {
 			throw new IndexOutOfBoundsException();
 		}
-		Wrapper rootWrapper = this.root.add(ch, pos, this.root);
-		this.root = rootWrapper.getNode();
+		Node add = new Node(ch);
+		this.size++;
+		if (this.root == NULL_NODE) {
+			this.root = add;
+			this.height = 0;
+			this.changed();
+			return;
+		}
+		// Walk down by rank. Every node we pass on its left side gets one more
+		// node in its left subtree, so its rank is fixed on the way down and
+		// nothing has to be remembered for the way back up.
+		Node current = this.root;
+		while (true) {
+			if (pos <= current.rank) {
+				current.rank++;
+				if (current.left == NULL_NODE) {
+					current.left = add;
+					this.linksChanged(current);
+					break;
+				}
+				current = current.left;
+			} else {
+				pos = pos - current.rank - 1;
+				if (current.right == NULL_NODE) {
+					current.right = add;
+					this.linksChanged(current);
+					break;
+				}
+				current = current.right;
+			}
+		}
+		add.parent = current;
+		if (this.rebalanceAfterGrowth(add)) {
+			this.height++;
+		}
+		this.updateRoot();
+	}
 
+	/**
+	 * Adds all of text so that its first character ends up at pos, in
+	 * O(k + log N) time for k characters. The text is built into a balanced
+	 * tree on its own, this tree is split at pos, and the three are joined
+	 * back together, using the first and last characters of text as the
+	 * nodes between them.
+	 * 
+	 * @param text
+	 *            characters to add
+	 * @param pos
+	 *            inorder position of the first added character
+	 * @throws IndexOutOfBoundsException
+	 *             if pos is negative or too large for this tree
+	 */
+	public void insert(CharSequence text, int pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos > this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		int length = text.length();
+		if (length == 0) {
+			return;
+		}
+		this.size += length;
+		Splitter splitter = new Splitter();
+		splitter.split(this.root, this.height, pos);
+		Node right = splitter.right;
+		int rightHeight = splitter.rightHeight;
+		Node first = new Node(text.charAt(0));
+		if (length == 1) {
+			this.root = splitter.join(splitter.left, splitter.leftHeight, pos, first, right, rightHeight);
+			this.height = splitter.height;
+			this.changed();
+			return;
+		}
+		Node middle = build(text, 1, length - 2);
+		Node left = splitter.join(splitter.left, splitter.leftHeight, pos, first, middle, builtHeight(length - 2));
+		Node last = new Node(text.charAt(length - 1));
+		this.root = splitter.join(left, splitter.height, pos + length - 1, last, right, rightHeight);
+		this.height = splitter.height;
+		this.changed();
+	}
+
+	/**
+	 * Walks back up from a subtree that just got one taller using the parent
+	 * links, fixing balance codes. The walk stops as soon as a subtree's
+	 * height stops growing, which for add is right after the first rotation.
+	 * Only the subtree that child is in is touched, so this also works on
+	 * trees that are not the root of an EditTree. If a rotation happens at
+	 * the top, the old top ends up right below the new one.
+	 * 
+	 * @return true if the top of the tree got taller
+	 */
+	private boolean rebalanceAfterGrowth(Node child) {
+		Node parent = child.parent;
+		while (parent != NULL_NODE) {
+			Node grandParent = parent.parent;
+			if (child == parent.left) {
+				if (parent.balance == Code.RIGHT) {
+					parent.balance = Code.SAME;
+					return false;
+				} else if (parent.balance == Code.SAME) {
+					parent.balance = Code.LEFT;
+				} else if (child.balance == Code.LEFT) {
+					replaceChild(grandParent, parent, parent.singleRight(parent));
+					this.numberOfRotation++;
+					return false;
+				} else if (child.balance == Code.RIGHT) {
+					replaceChild(grandParent, parent, parent.doubleRight(parent));
+					this.numberOfRotation += 2;
+					return false;
+				} else {
+					// Never happens in add, but a join can hang a balanced
+					// subtree here. The rotated subtree is still one taller.
+					replaceChild(grandParent, parent, parent.singleRight(parent));
+					this.numberOfRotation++;
+					parent.balance = Code.LEFT;
+					child.balance = Code.RIGHT;
+					parent = child;
+				}
+			} else {
+				if (parent.balance == Code.LEFT) {
+					parent.balance = Code.SAME;
+					return false;
+				} else if (parent.balance == Code.SAME) {
+					parent.balance = Code.RIGHT;
+				} else if (child.balance == Code.RIGHT) {
+					replaceChild(grandParent, parent, parent.singleLeft(parent));
+					this.numberOfRotation++;
+					return false;
+				} else if (child.balance == Code.LEFT) {
+					replaceChild(grandParent, parent, parent.doubleLeft(parent));
+					this.numberOfRotation += 2;
+					return false;
+				} else {
+					replaceChild(grandParent, parent, parent.singleLeft(parent));
+					this.numberOfRotation++;
+					parent.balance = Code.RIGHT;
+					child.balance = Code.LEFT;
+					parent = child;
+				}
+			}
+			child = parent;
+			parent = grandParent;
+		}
+		return true;
+	}
+
+	/**
+	 * Hooks the new root of a rotated subtree (or the node taking a deleted
+	 * node's place) back into the tree where the old one used to hang. The
+	 * display is told about newChild as well: the nodes a rotation moved were
+	 * all above newChild before it, so that is where the display looks.
+	 */
+	private void replaceChild(Node parent, Node oldChild, Node newChild) {
+		if (newChild != NULL_NODE) {
+			newChild.parent = parent;
+			this.linksChanged(newChild);
+		}
+		if (parent == NULL_NODE) {
+			return;
+		} else if (parent.left == oldChild) {
+			parent.left = newChild;
+		} else {
+			parent.right = newChild;
+		}
+		this.linksChanged(parent);
+	}
+
+	/**
+	 * The rebalancing helpers do not know about this.root. A rotation at the
+	 * top leaves the old root right below the new one, so follow its parent
+	 * link once.
+	 */
+	private void updateRoot() {
+		if (this.root != NULL_NODE && this.root.parent != NULL_NODE) {
+			this.root = this.root.parent;
+		}
 	}
 
 	/**
@@ -256,10 +688,47 @@ public class EditTree {
 	 * @throws IndexOutOfBoundsException
 	 */
 	public char get(int pos) throws IndexOutOfBoundsException {
-		if (pos >= this.size() || pos < 0) {
+		if (pos >= this.size || pos < 0) {
 			throw new IndexOutOfBoundsException();
 		}
-		return this.toString().charAt(pos);
+		return this.nodeAt(pos).element;
+	}
+
+	/**
+	 * rank is the number of nodes to the left, so it tells us which way to go
+	 * without building the string.
+	 */
+	private Node nodeAt(int pos) {
+		Node current = this.root;
+		while (pos != current.rank) {
+			if (pos < current.rank) {
+				current = current.left;
+			} else {
+				pos = pos - current.rank - 1;
+				current = current.right;
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * @return the node after node in an inorder traversal, or NULL_NODE if
+	 *         node is the last one. Walking through k nodes this way costs
+	 *         O(k + log n) in total, since every link is crossed at most
+	 *         twice.
+	 */
+	private static Node successor(Node node) {
+		if (node.right != NULL_NODE) {
+			node = node.right;
+			while (node.left != NULL_NODE) {
+				node = node.left;
+			}
+			return node;
+		}
+		while (node.parent != NULL_NODE && node.parent.right == node) {
+			node = node.parent;
+		}
+		return node.parent;
 	}
 
 	/**
@@ -268,10 +737,7 @@ public class EditTree {
 	 * @return the height of this tree
 	 */
 	public int height() {
-		if (this.root == NULL_NODE) {
-			return -1;
-		}
-		return this.root.height();
+		return this.height;
 	}
 
 	/**
@@ -280,10 +746,80 @@ public class EditTree {
 	 * @return the number of nodes in this tree
 	 */
 	public int size() {
-		if (this.root == NULL_NODE) {
-			return 0;
+		return this.size;
+	}
+
+	/**
+	 * Same as size().
+	 */
+	@Override
+	public int length() {
+		return this.size;
+	}
+
+	/**
+	 * Same as get(int), going down by rank in O(log n).
+	 */
+	@Override
+	public char charAt(int index) throws IndexOutOfBoundsException {
+		return this.get(index);
+	}
+
+	/**
+	 * @return a view of positions start .. end - 1 of this tree, not a copy.
+	 *         Its charAt goes down the tree like this one's, and its
+	 *         toString() copies only its own characters. It keeps the
+	 *         positions, not the characters, so after an edit it shows
+	 *         whatever is at those positions then, and using it once they
+	 *         are past the end throws IndexOutOfBoundsException.
+	 * @throws IndexOutOfBoundsException
+	 *             unless 0 <= start <= end <= size()
+	 */
+	@Override
+	public CharSequence subSequence(int start, int end) throws IndexOutOfBoundsException {
+		if (start < 0 || start > end || end > this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		return new SubSequence(start, end);
+	}
+
+	/**
+	 * Positions start .. end - 1 of the tree, read from the tree each time.
+	 */
+	private class SubSequence implements CharSequence {
+		private final int start;
+		private final int end;
+
+		public SubSequence(int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public int length() {
+			return this.end - this.start;
+		}
+
+		@Override
+		public char charAt(int index) {
+			if (index < 0 || index >= this.length()) {
+				throw new IndexOutOfBoundsException();
+			}
+			return EditTree.this.get(this.start + index);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			if (start < 0 || start > end || end > this.length()) {
+				throw new IndexOutOfBoundsException();
+			}
+			return new SubSequence(this.start + start, this.start + end);
+		}
+
+		@Override
+		public String toString() {
+			return EditTree.this.get(this.start, this.length());
 		}
-		return this.root.size(); // replace by a real calculation.
 	}
 
 	/**
@@ -300,18 +836,152 @@ public class EditTree {
 		// node to be deleted with either its in-order successor or predecessor.
 		// The tests assume assume that you will replace it with the
 		// *successor*.
-		if (pos < 0 || pos > this.size() - 1) {
+		if (pos < 0 || pos > this.size - 1) {
 			throw new IndexOutOfBoundsException();
 		}
-		DeleteWrapper output = this.root.delete(pos);
-		this.root = output.getReturnNode();
-		this.numberOfRotation += output.getDeleteNode().numberOfRotation;
-		return output.getDeleteNode().element; // replace by a real calculation.
+		return this.remove(pos).element;
 	}
 
 	/**
-	 * MILESTONE 3, EASY This method operates in O(length*log N), where N is the
-	 * size of this tree.
+	 * Takes the node at pos out of this tree, replacing it with its successor
+	 * if it has two children, and rebalances.
+	 * 
+	 * @return the node that was taken out
+	 */
+	private Node remove(int pos) {
+		// Walk down by rank. The node is leaving the left subtree of every
+		// node we pass on its left side, so those ranks drop on the way down.
+		Node removed = this.root;
+		while (pos != removed.rank) {
+			if (pos < removed.rank) {
+				removed.rank--;
+				removed = removed.left;
+			} else {
+				pos = pos - removed.rank - 1;
+				removed = removed.right;
+			}
+		}
+		// parent is the lowest node whose subtree may have gotten shorter, and
+		// fromLeft says which of its sides lost the node.
+		Node parent;
+		boolean fromLeft;
+		if (removed.left != NULL_NODE && removed.right != NULL_NODE) {
+			Node successor = removed.right;
+			if (successor.left == NULL_NODE) {
+				// The successor moves up with its right subtree, so it is the
+				// successor's own right side that got shorter.
+				parent = successor;
+				fromLeft = false;
+			} else {
+				while (successor.left != NULL_NODE) {
+					successor.rank--;
+					successor = successor.left;
+				}
+				parent = successor.parent;
+				fromLeft = true;
+				parent.left = successor.right;
+				this.linksChanged(parent);
+				if (successor.right != NULL_NODE) {
+					successor.right.parent = parent;
+				}
+				successor.right = removed.right;
+				successor.right.parent = successor;
+			}
+			successor.left = removed.left;
+			successor.left.parent = successor;
+			successor.rank = removed.rank;
+			successor.balance = removed.balance;
+			replaceChild(removed.parent, removed, successor);
+			if (removed == this.root) {
+				this.root = successor;
+			}
+		} else {
+			Node child = (removed.left != NULL_NODE) ? removed.left : removed.right;
+			parent = removed.parent;
+			fromLeft = parent != NULL_NODE && parent.left == removed;
+			replaceChild(parent, removed, child);
+			if (removed == this.root) {
+				this.root = child;
+			}
+		}
+		this.size--;
+		if (this.rebalanceAfterDelete(parent, fromLeft)) {
+			this.height--;
+		}
+		this.updateRoot();
+		return removed;
+	}
+
+	/**
+	 * Walks up from the parent of the removed spot, fixing balance codes. Only
+	 * balance codes are needed to tell whether a subtree got shorter, so no
+	 * heights are computed and the whole walk is O(log n). Unlike add, a
+	 * rotation does not always end the walk; it ends as soon as a subtree
+	 * keeps its old height.
+	 * 
+	 * @return true if the top of the tree got shorter
+	 */
+	private boolean rebalanceAfterDelete(Node parent, boolean fromLeft) {
+		while (parent != NULL_NODE) {
+			Node grandParent = parent.parent;
+			boolean parentFromLeft = grandParent != NULL_NODE && grandParent.left == parent;
+			if (fromLeft) {
+				if (parent.balance == Code.SAME) {
+					parent.balance = Code.RIGHT;
+					return false;
+				} else if (parent.balance == Code.LEFT) {
+					parent.balance = Code.SAME;
+				} else {
+					Node sibling = parent.right;
+					if (sibling.balance == Code.LEFT) {
+						replaceChild(grandParent, parent, parent.doubleLeft(parent));
+						this.numberOfRotation += 2;
+					} else if (sibling.balance == Code.RIGHT) {
+						replaceChild(grandParent, parent, parent.singleLeft(parent));
+						this.numberOfRotation++;
+					} else {
+						// A single rotation keeps the height when the sibling
+						// was balanced, so this is the last step.
+						replaceChild(grandParent, parent, parent.singleLeft(parent));
+						this.numberOfRotation++;
+						sibling.balance = Code.LEFT;
+						parent.balance = Code.RIGHT;
+						return false;
+					}
+				}
+			} else {
+				if (parent.balance == Code.SAME) {
+					parent.balance = Code.LEFT;
+					return false;
+				} else if (parent.balance == Code.RIGHT) {
+					parent.balance = Code.SAME;
+				} else {
+					Node sibling = parent.left;
+					if (sibling.balance == Code.RIGHT) {
+						replaceChild(grandParent, parent, parent.doubleRight(parent));
+						this.numberOfRotation += 2;
+					} else if (sibling.balance == Code.LEFT) {
+						replaceChild(grandParent, parent, parent.singleRight(parent));
+						this.numberOfRotation++;
+					} else {
+						replaceChild(grandParent, parent, parent.singleRight(parent));
+						this.numberOfRotation++;
+						sibling.balance = Code.RIGHT;
+						parent.balance = Code.LEFT;
+						return false;
+					}
+				}
+			}
+			parent = grandParent;
+			fromLeft = parentFromLeft;
+		}
+		return true;
+	}
+
+	/**
+	 * MILESTONE 3, EASY This method operates in O(length + log N), where N is
+	 * the size of this tree: it finds pos once by rank and then follows
+	 * parent links from each node to the next.
 	 * 
 	 * @param pos
 	 *            location of the beginning of the string to retrieve
@@ -323,7 +993,15 @@ public class EditTree {
 	 *             within this tree.
 	 */
 	public String get(int pos, int length) throws IndexOutOfBoundsException {
-		return "";
+		if (pos < 0 || length < 0 || length > this.size - pos) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (length == 0) {
+			return "";
+		}
+		char[] result = new char[length];
+		copy(this.nodeAt(pos), result, 0, length);
+		return new String(result);
 	}
 
 	/**
@@ -337,7 +1015,35 @@ public class EditTree {
 	 *             if this == other
 	 */
 	public void concatenate(EditTree other) throws IllegalArgumentException {
-
+		if (this == other) {
+			throw new IllegalArgumentException();
+		}
+		this.numberOfRotation += other.numberOfRotation;
+		other.numberOfRotation = 0;
+		if (other.root == NULL_NODE) {
+			return;
+		}
+		if (this.root == NULL_NODE) {
+			this.root = other.root;
+			this.size = other.size;
+			this.height = other.height;
+		} else {
+			// The join needs a node to put between the two trees. Borrow the
+			// first node of other, which costs one O(log n) delete.
+			int size = this.size;
+			Node pivot = other.remove(0);
+			this.numberOfRotation += other.numberOfRotation;
+			other.numberOfRotation = 0;
+			Splitter splitter = new Splitter();
+			this.root = splitter.join(this.root, this.height, size, pivot, other.root, other.height);
+			this.size = size + 1 + other.size;
+			this.height = splitter.height;
+		}
+		other.root = NULL_NODE;
+		other.size = 0;
+		other.height = -1;
+		this.changed();
+		other.changed();
 	}
 
 	/**
@@ -352,14 +1058,216 @@ public class EditTree {
 	 * @throws IndexOutOfBoundsException
 	 */
 	public EditTree split(int pos) throws IndexOutOfBoundsException {
-		return null; // replace by a real calculation.
+		if (pos < 0 || pos > this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		Splitter splitter = new Splitter();
+		splitter.split(this.root, this.height, pos);
+		EditTree right = new EditTree(splitter.right, this.size - pos, splitter.rightHeight);
+		this.root = splitter.left;
+		this.size = pos;
+		this.height = splitter.leftHeight;
+		this.changed();
+		return right;
 	}
 
 	/**
-	 * MILESTONE 3: JUST READ IT FOR USE OF SPLIT/CONCATENATE This method is
-	 * provided for you, and should not need to be changed. If split() and
-	 * concatenate() are O(log N) operations as required, delete should also be
-	 * O(log N)
+	 * Wraps nodes that have just been taken out of another tree.
+	 * 
+	 * @param root
+	 * @param size
+	 * @param height
+	 */
+	private EditTree(Node root, int size, int height) {
+		this.root = root;
+		this.size = size;
+		this.height = height;
+	}
+
+	/**
+	 * Splits and joins trees by height, using the AVL join from the paper
+	 * referenced in the spec. Nodes do not store their height, but a child's
+	 * height follows from its parent's height and balance code, so heights
+	 * are worked out on the way down. Results are left in the fields and one
+	 * Splitter is used for a whole split, so nothing is allocated per level.
+	 */
+	private class Splitter {
+		// The two trees left by split(), and their heights.
+		private Node left = NULL_NODE;
+		private int leftHeight = -1;
+		private Node right = NULL_NODE;
+		private int rightHeight = -1;
+		// The height of the tree made by the last join().
+		private int height;
+
+		/**
+		 * Splits the tree below node, of the given height, into the nodes
+		 * before pos and the nodes from pos on. Each level does one join, and
+		 * the cost of the joins adds up to the height of the tree.
+		 */
+		public void split(Node node, int height, int pos) {
+			if (node == NULL_NODE) {
+				this.left = NULL_NODE;
+				this.leftHeight = -1;
+				this.right = NULL_NODE;
+				this.rightHeight = -1;
+				return;
+			}
+			Node leftChild = node.left;
+			Node rightChild = node.right;
+			int leftChildHeight = height - ((node.balance == Code.RIGHT) ? 2 : 1);
+			int rightChildHeight = height - ((node.balance == Code.LEFT) ? 2 : 1);
+			int leftChildSize = node.rank;
+			if (leftChild != NULL_NODE) {
+				leftChild.parent = NULL_NODE;
+			}
+			if (rightChild != NULL_NODE) {
+				rightChild.parent = NULL_NODE;
+			}
+			if (pos <= node.rank) {
+				if (pos == node.rank) {
+					this.left = leftChild;
+					this.leftHeight = leftChildHeight;
+					this.right = NULL_NODE;
+					this.rightHeight = -1;
+				} else {
+					this.split(leftChild, leftChildHeight, pos);
+				}
+				this.right = this.join(this.right, this.rightHeight, leftChildSize - pos, node, rightChild,
+						rightChildHeight);
+				this.rightHeight = this.height;
+			} else {
+				this.split(rightChild, rightChildHeight, pos - node.rank - 1);
+				this.left = this.join(leftChild, leftChildHeight, leftChildSize, node, this.left, this.leftHeight);
+				this.leftHeight = this.height;
+			}
+		}
+
+		/**
+		 * Makes one tree out of left, pivot and right, in that order, in time
+		 * proportional to the difference of their heights. pivot must not be
+		 * in either tree. Its old links are thrown away.
+		 * 
+		 * @return the root of the joined tree; its height is left in height
+		 */
+		public Node join(Node left, int leftHeight, int leftSize, Node pivot, Node right, int rightHeight) {
+			if (leftHeight > rightHeight + 1) {
+				return this.joinIntoLeft(left, leftHeight, leftSize, pivot, right, rightHeight);
+			} else if (rightHeight > leftHeight + 1) {
+				return this.joinIntoRight(left, leftHeight, leftSize, pivot, right, rightHeight);
+			}
+			this.link(pivot, left, leftSize, right);
+			pivot.parent = NULL_NODE;
+			if (leftHeight > rightHeight) {
+				pivot.balance = Code.LEFT;
+			} else if (rightHeight > leftHeight) {
+				pivot.balance = Code.RIGHT;
+			} else {
+				pivot.balance = Code.SAME;
+			}
+			this.height = Math.max(leftHeight, rightHeight) + 1;
+			return pivot;
+		}
+
+		/**
+		 * left is the taller tree. Walk down its right spine to the first
+		 * subtree no more than one taller than right, put pivot there with
+		 * that subtree and right below it, and rebalance upward as if pivot
+		 * had been added.
+		 */
+		private Node joinIntoLeft(Node left, int leftHeight, int leftSize, Node pivot, Node right,
+				int rightHeight) {
+			Node parent = NULL_NODE;
+			Node spine = left;
+			int spineHeight = leftHeight;
+			int spineSize = leftSize;
+			while (spineHeight > rightHeight + 1) {
+				spineSize = spineSize - spine.rank - 1;
+				spineHeight -= (spine.balance == Code.LEFT) ? 2 : 1;
+				parent = spine;
+				spine = spine.right;
+			}
+			this.link(pivot, spine, spineSize, right);
+			pivot.balance = (spineHeight == rightHeight) ? Code.SAME : Code.LEFT;
+			parent.right = pivot;
+			pivot.parent = parent;
+			boolean grew = EditTree.this.rebalanceAfterGrowth(pivot);
+			this.height = grew ? leftHeight + 1 : leftHeight;
+			return (left.parent == NULL_NODE) ? left : left.parent;
+		}
+
+		/**
+		 * The mirror image of joinIntoLeft. Every node on the left spine of
+		 * right gets left and pivot added to its left subtree, so its rank
+		 * goes up on the way down.
+		 */
+		private Node joinIntoRight(Node left, int leftHeight, int leftSize, Node pivot, Node right,
+				int rightHeight) {
+			Node parent = NULL_NODE;
+			Node spine = right;
+			int spineHeight = rightHeight;
+			while (spineHeight > leftHeight + 1) {
+				spine.rank += leftSize + 1;
+				spineHeight -= (spine.balance == Code.RIGHT) ? 2 : 1;
+				parent = spine;
+				spine = spine.left;
+			}
+			this.link(pivot, left, leftSize, spine);
+			pivot.balance = (spineHeight == leftHeight) ? Code.SAME : Code.RIGHT;
+			parent.left = pivot;
+			pivot.parent = parent;
+			boolean grew = EditTree.this.rebalanceAfterGrowth(pivot);
+			this.height = grew ? rightHeight + 1 : rightHeight;
+			return (right.parent == NULL_NODE) ? right : right.parent;
+		}
+
+		/**
+		 * Takes the first node out of the tree left in right, and leaves the
+		 * rest of that tree and its height in right and rightHeight. This is
+		 * how a pivot for a join is found when there is no spare node.
+		 * 
+		 * @return the node taken out
+		 */
+		public Node removeFirstOfRight() {
+			Node first = this.right;
+			while (first.left != NULL_NODE) {
+				first.rank--;
+				first = first.left;
+			}
+			Node parent = first.parent;
+			replaceChild(parent, first, first.right);
+			if (parent == NULL_NODE) {
+				// first was the root and had no left subtree
+				this.right = first.right;
+				this.rightHeight--;
+			} else {
+				Node top = this.right;
+				if (EditTree.this.rebalanceAfterDelete(parent, true)) {
+					this.rightHeight--;
+				}
+				this.right = (top.parent == NULL_NODE) ? top : top.parent;
+			}
+			return first;
+		}
+
+		private void link(Node node, Node left, int leftSize, Node right) {
+			node.left = left;
+			node.right = right;
+			node.rank = leftSize;
+			if (left != NULL_NODE) {
+				left.parent = node;
+			}
+			if (right != NULL_NODE) {
+				right.parent = node;
+			}
+		}
+	}
+
+	/**
+	 * MILESTONE 3 Removes a range of characters in O(log N) time. The range
+	 * may run up to and including the last character. This tree is split
+	 * around the range and the two outside pieces are joined again, without
+	 * making an intermediate EditTree for each split.
 	 * 
 	 * @param start
 	 *            position of beginning of string to delete
@@ -372,13 +1280,56 @@ public class EditTree {
 	 *             tree.
 	 */
 	public EditTree delete(int start, int length) throws IndexOutOfBoundsException {
-		if (start < 0 || start + length >= this.size())
+		return this.cut(start, length, true);
+	}
+
+	/**
+	 * Like delete(int, int), but the removed characters are thrown away
+	 * instead of being handed back in a new EditTree.
+	 * 
+	 * @param start
+	 *            position of beginning of string to delete
+	 * @param length
+	 *            length of string to delete
+	 * @throws IndexOutOfBoundsException
+	 *             unless both start and start+length-1 are in range for this
+	 *             tree.
+	 */
+	public void discard(int start, int length) throws IndexOutOfBoundsException {
+		this.cut(start, length, false);
+	}
+
+	/**
+	 * Cuts the range out of this tree.
+	 * 
+	 * @return a tree of the removed nodes if keep is true, otherwise null
+	 */
+	private EditTree cut(int start, int length, boolean keep) {
+		if (start < 0 || length < 0 || length > this.size - start) {
 			throw new IndexOutOfBoundsException(
-					(start < 0) ? "negative first argument to delete" : "delete range extends past end of string");
-		EditTree t2 = this.split(start);
-		EditTree t3 = t2.split(length);
-		this.concatenate(t3);
-		return t2;
+					(start < 0 || length < 0) ? "negative argument to delete" : "delete range extends past end of string");
+		}
+		Splitter splitter = new Splitter();
+		splitter.split(this.root, this.height, start);
+		Node left = splitter.left;
+		int leftHeight = splitter.leftHeight;
+		splitter.split(splitter.right, splitter.rightHeight, length);
+		Node removed = splitter.left;
+		int removedHeight = splitter.leftHeight;
+		this.size -= length;
+		if (splitter.right == NULL_NODE) {
+			this.root = left;
+			this.height = leftHeight;
+		} else if (left == NULL_NODE) {
+			this.root = splitter.right;
+			this.height = splitter.rightHeight;
+		} else {
+			Node pivot = splitter.removeFirstOfRight();
+			this.root = splitter.join(left, leftHeight, start, pivot, splitter.right, splitter.rightHeight);
+			this.height = splitter.height;
+		}
+		this.changed();
+		return keep ? new EditTree(removed, length, removedHeight) : null;
 	}
 
 	/**
@@ -442,4 +1393,34 @@ public class EditTree {
 		}
 	}
 
+	/**
+	 * Tells the display, if there is one, to draw this tree again, laying
+	 * all of it out again. For edits that change links in many places.
+	 */
+	private void changed() {
+		if (this.display != null) {
+			this.display.treeChanged();
+		}
+	}
+
+	/**
+	 * Tells the display, if there is one, that the child links of node have
+	 * changed, so it only has to lay out again what is above node. add and
+	 * delete call this for every node whose links they change instead of
+	 * changed().
+	 */
+	private void linksChanged(Node node) {
+		if (this.display != null && node != NULL_NODE) {
+			this.display.linksChanged(node);
+		}
+	}
+
+	/**
+	 * Makes display, which has no window, hear about every edit of this tree
+	 * the way a shown display does.
+	 */
+	void setDisplay(DisplayableBinaryTree display) {
+		this.display = display;
+	}
+
 }
@@ -0,0 +1,766 @@
+package editortrees;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import editortrees.Node.Code;
+
+/**
+ * Simple timing and allocation benchmarks for EditTree. Run main with the
+ * names of the benchmarks to run (for example "add"), or with no arguments to
+ * run all of them.
+ *
+ * These are plain System.nanoTime() loops with a warm-up pass, not a JMH
+ * harness, so only compare numbers printed by the same run. Allocation is
+ * read from the HotSpot per-thread allocation counter.
+ */
+public class EditTreeBenchmark {
+
+	private static final int[] SIZES = { 10000, 100000, 1000000 };
+	private static final long SEED = 230;
+	private static final int RENDER_WIDTH = 1024;
+	private static final int RENDER_HEIGHT = 768;
+
+	public static void main(String[] args) {
+		if (args.length == 0) {
+			args = new String[] { "add", "get", "range", "build", "split", "concatenate", "insert", "rope", "arrays", "offheap", "construct", "render", "write", "materialize" };
+		}
+		for (String name : args) {
+			if (name.equals("add")) {
+				benchmarkAdd();
+			} else if (name.equals("get")) {
+				benchmarkGet();
+			} else if (name.equals("range")) {
+				benchmarkRange();
+			} else if (name.equals("build")) {
+				benchmarkBuild();
+			} else if (name.equals("split")) {
+				benchmarkSplit();
+			} else if (name.equals("concatenate")) {
+				benchmarkConcatenate();
+			} else if (name.equals("insert")) {
+				benchmarkInsert();
+			} else if (name.equals("rope")) {
+				benchmarkRope();
+			} else if (name.equals("arrays")) {
+				benchmarkArrays();
+			} else if (name.equals("offheap")) {
+				benchmarkOffHeap();
+			} else if (name.equals("construct")) {
+				benchmarkConstruct();
+			} else if (name.equals("render")) {
+				benchmarkRender();
+			} else if (name.equals("write")) {
+				benchmarkWrite();
+			} else if (name.equals("materialize")) {
+				benchmarkMaterialize();
+			} else {
+				System.out.println("Unknown benchmark: " + name);
+			}
+		}
+	}
+
+	/**
+	 * Random-position adds through EditTree.add against RecursiveAdd, the
+	 * recursive add it replaced, which allocates a RecursiveAdd at every
+	 * level.
+	 */
+	private static void benchmarkAdd() {
+		System.out.println("add(char, int) at random positions");
+		// warm up both paths so the JIT has compiled them before measuring
+		addIterative(SIZES[0]);
+		addRecursive(SIZES[0]);
+		for (int n : SIZES) {
+			long bytes = allocatedBytes();
+			long start = System.nanoTime();
+			addIterative(n);
+			long iterativeTime = System.nanoTime() - start;
+			long iterativeBytes = allocatedBytes() - bytes;
+
+			bytes = allocatedBytes();
+			start = System.nanoTime();
+			addRecursive(n);
+			long recursiveTime = System.nanoTime() - start;
+			long recursiveBytes = allocatedBytes() - bytes;
+
+			System.out.printf("  n=%8d  iterative %6.1f ns/add %6.1f B/add   recursive %6.1f ns/add %6.1f B/add%n", n,
+					(double) iterativeTime / n, (double) iterativeBytes / n, (double) recursiveTime / n,
+					(double) recursiveBytes / n);
+		}
+	}
+
+	private static EditTree addIterative(int n) {
+		Random random = new Random(SEED);
+		EditTree t = new EditTree();
+		for (int i = 0; i < n; i++) {
+			t.add((char) ('a' + i % 26), random.nextInt(i + 1));
+		}
+		return t;
+	}
+
+	private static Node addRecursive(int n) {
+		Random random = new Random(SEED);
+		Node root = EditTree.NULL_NODE;
+		for (int i = 0; i < n; i++) {
+			root = RecursiveAdd.add(root, (char) ('a' + i % 26), random.nextInt(i + 1), root).node;
+		}
+		return root;
+	}
+
+	/**
+	 * The recursive add that EditTree.add replaced, kept only as the
+	 * baseline for benchmarkAdd. It recurses into the node according to the
+	 * rank and fixes balance and rank on the way back, returning a new
+	 * RecursiveAdd at every level to say whether the height is still growing.
+	 */
+	private static class RecursiveAdd {
+		private final Node node;
+		private final boolean keepChanging;
+
+		public RecursiveAdd(Node node, boolean keepChanging) {
+			this.node = node;
+			this.keepChanging = keepChanging;
+		}
+
+		public static RecursiveAdd add(Node node, char ch, int pos, Node parent) {
+			if (node == EditTree.NULL_NODE) {
+				Node add = new Node(ch);
+				add.parent = parent;
+				return new RecursiveAdd(add, true);
+			}
+			if (pos <= node.rank) {
+				node.rank++;
+				RecursiveAdd temp = add(node.left, ch, pos, node);
+				node.left = temp.node;
+				if (!temp.keepChanging) {
+					return new RecursiveAdd(node, false);
+				}
+				if (node.balance == Code.SAME) {
+					node.balance = Code.LEFT;
+					return new RecursiveAdd(node, true);
+				} else if (node.balance == Code.RIGHT) {
+					node.balance = Code.SAME;
+				} else if (node.left.balance == Code.LEFT) {
+					node = node.singleRight(node);
+					node.parent = parent;
+				} else if (node.left.balance == Code.RIGHT) {
+					node = node.doubleRight(node);
+					node.parent = parent;
+				}
+			} else {
+				RecursiveAdd temp = add(node.right, ch, pos - node.rank - 1, node);
+				node.right = temp.node;
+				if (!temp.keepChanging) {
+					return new RecursiveAdd(node, false);
+				}
+				if (node.balance == Code.SAME) {
+					node.balance = Code.RIGHT;
+					return new RecursiveAdd(node, true);
+				} else if (node.balance == Code.LEFT) {
+					node.balance = Code.SAME;
+				} else if (node.right.balance == Code.RIGHT) {
+					node = node.singleLeft(node);
+					node.parent = parent;
+				} else if (node.right.balance == Code.LEFT) {
+					node = node.doubleLeft(node);
+					node.parent = parent;
+				}
+			}
+			return new RecursiveAdd(node, false);
+		}
+	}
+
+	/**
+	 * Random-position get(int) on documents from 1K to 10M characters. The
+	 * cost should only grow with the height of the tree.
+	 */
+	private static void benchmarkGet() {
+		System.out.println("get(int) at random positions");
+		int reads = 1000000;
+		for (int n = 1000; n <= 10000000; n *= 10) {
+			EditTree t = appendTree(n);
+			// warm up, then measure
+			readRandom(t, reads);
+			long bytes = allocatedBytes();
+			long start = System.nanoTime();
+			int checksum = readRandom(t, reads);
+			long time = System.nanoTime() - start;
+			bytes = allocatedBytes() - bytes;
+			System.out.printf("  n=%8d  %6.1f ns/get %6.2f B/get  height %d  (checksum %d)%n", n, (double) time / reads,
+					(double) bytes / reads, t.height(), checksum);
+		}
+	}
+
+	/**
+	 * Opening a document: the O(n) EditTree(CharSequence) builder, on one
+	 * thread and on the common ForkJoinPool, against appending one character
+	 * at a time.
+	 */
+	private static void benchmarkBuild() {
+		System.out.println("EditTree(CharSequence) against add(char), "
+				+ Runtime.getRuntime().availableProcessors() + " processors");
+		new EditTree(text(SIZES[0]), false);
+		new EditTree(text(SIZES[0]), true);
+		appendTree(SIZES[0]);
+		for (int n : SIZES) {
+			String text = text(n);
+			long start = System.nanoTime();
+			new EditTree(text, false);
+			long bulkTime = System.nanoTime() - start;
+			start = System.nanoTime();
+			new EditTree(text, true);
+			long parallelTime = System.nanoTime() - start;
+			start = System.nanoTime();
+			appendTree(n);
+			long appendTime = System.nanoTime() - start;
+			System.out.printf("  n=%8d  bulk %8.2f ms   parallel bulk %8.2f ms   add(char) %8.2f ms%n", n,
+					bulkTime / 1e6, parallelTime / 1e6, appendTime / 1e6);
+		}
+	}
+
+	/**
+	 * split(int) at a random position of a freshly built tree. The cost should
+	 * follow the height of the tree, not its size.
+	 */
+	private static void benchmarkSplit() {
+		System.out.println("split(int) at random positions");
+		int splits = 100;
+		Random random = new Random(SEED);
+		for (int n : SIZES) {
+			String text = text(n);
+			long time = 0;
+			for (int i = 0; i < splits + 10; i++) {
+				EditTree t = new EditTree(text);
+				int pos = random.nextInt(n + 1);
+				long start = System.nanoTime();
+				t.split(pos);
+				if (i >= 10) {
+					// the first few are warm-up
+					time += System.nanoTime() - start;
+				}
+			}
+			System.out.printf("  n=%8d  %8.2f us/split%n", n, time / 1e3 / splits);
+		}
+	}
+
+	/**
+	 * Cuts a tree at a random position and times gluing the two halves back
+	 * together with concatenate(EditTree).
+	 */
+	private static void benchmarkConcatenate() {
+		System.out.println("concatenate(EditTree) of the two halves of a split");
+		int joins = 10000;
+		Random random = new Random(SEED);
+		for (int n : SIZES) {
+			EditTree t = new EditTree(text(n));
+			long time = 0;
+			for (int i = 0; i < joins + 1000; i++) {
+				EditTree right = t.split(random.nextInt(n + 1));
+				long start = System.nanoTime();
+				t.concatenate(right);
+				if (i >= 1000) {
+					time += System.nanoTime() - start;
+				}
+			}
+			System.out.printf("  n=%8d  %8.2f us/concatenate  height %d%n", n, time / 1e3 / joins, t.height());
+		}
+	}
+
+	/**
+	 * Pasting text into the middle of a 1M character document with
+	 * insert(CharSequence, int), against one add(char, int) per character.
+	 */
+	private static void benchmarkInsert() {
+		System.out.println("insert(CharSequence, int) against add(char, int) into a 1M character document");
+		String document = text(SIZES[SIZES.length - 1]);
+		new EditTree(document).insert(text(SIZES[0]), 0);
+		for (int k = 1000; k <= 1000000; k *= 10) {
+			String clipboard = text(k);
+			EditTree t = new EditTree(document);
+			long start = System.nanoTime();
+			t.insert(clipboard, document.length() / 2);
+			long insertTime = System.nanoTime() - start;
+
+			t = new EditTree(document);
+			start = System.nanoTime();
+			for (int i = 0; i < k; i++) {
+				t.add(clipboard.charAt(i), document.length() / 2 + i);
+			}
+			long addTime = System.nanoTime() - start;
+			System.out.printf("  k=%8d  insert %8.2f ms   add(char, int) %8.2f ms%n", k, insertTime / 1e6,
+					addTime / 1e6);
+		}
+	}
+
+	/**
+	 * Heap per character of a 1M character document held by EditTree and by
+	 * ChunkedEditTree with a few chunk sizes, and the cost of random-position
+	 * adds and reads in each.
+	 */
+	private static void benchmarkRope() {
+		System.out.println("ChunkedEditTree against EditTree, 1M character document");
+		String text = text(SIZES[SIZES.length - 1]);
+		int edits = 100000;
+		long before = usedHeap();
+		EditTree t = new EditTree(text);
+		long bytes = usedHeap() - before;
+		long start = System.nanoTime();
+		Random random = new Random(SEED);
+		for (int i = 0; i < edits; i++) {
+			t.add('x', random.nextInt(t.size() + 1));
+		}
+		long addTime = System.nanoTime() - start;
+		start = System.nanoTime();
+		int checksum = readRandom(t, edits);
+		long getTime = System.nanoTime() - start;
+		System.out.printf("  EditTree                  %6.1f B/char   add %6.1f ns   get %6.1f ns  (checksum %d)%n",
+				(double) bytes / text.length(), (double) addTime / edits, (double) getTime / edits, checksum);
+		t = null;
+
+		for (int capacity = 64; capacity <= 1024; capacity *= 4) {
+			before = usedHeap();
+			ChunkedEditTree rope = new ChunkedEditTree(text, capacity);
+			bytes = usedHeap() - before;
+			random = new Random(SEED);
+			start = System.nanoTime();
+			for (int i = 0; i < edits; i++) {
+				rope.add('x', random.nextInt(rope.size() + 1));
+			}
+			addTime = System.nanoTime() - start;
+			random = new Random(SEED);
+			checksum = 0;
+			start = System.nanoTime();
+			for (int i = 0; i < edits; i++) {
+				checksum += rope.get(random.nextInt(rope.size()));
+			}
+			getTime = System.nanoTime() - start;
+			System.out.printf(
+					"  ChunkedEditTree(%4d)     %6.1f B/char   add %6.1f ns   get %6.1f ns  (checksum %d)%n",
+					capacity, (double) bytes / text.length(), (double) addTime / edits, (double) getTime / edits,
+					checksum);
+		}
+	}
+
+	/**
+	 * Random-position get(int) and add(char, int) on EditTree and on
+	 * ArrayEditTree, whose nodes are in primitive arrays, for documents up to
+	 * 20M characters.
+	 */
+	private static void benchmarkArrays() {
+		System.out.println("ArrayEditTree against EditTree, random positions");
+		int reads = 1000000;
+		int adds = 100000;
+		for (int n = 1000000; n <= 20000000; n *= (n == 1000000) ? 10 : 2) {
+			String text = text(n);
+			EditTree t = new EditTree(text);
+			readRandom(t, reads);
+			long start = System.nanoTime();
+			int checksum = readRandom(t, reads);
+			long getTime = System.nanoTime() - start;
+			// the first adds grow the arrays of ArrayEditTree once, so time
+			// the second round for both
+			Random random = new Random(SEED);
+			for (int i = 0; i < adds; i++) {
+				t.add('x', random.nextInt(n));
+			}
+			start = System.nanoTime();
+			for (int i = 0; i < adds; i++) {
+				t.add('x', random.nextInt(n));
+			}
+			long addTime = System.nanoTime() - start;
+			t = null;
+
+			ArrayEditTree arrays = new ArrayEditTree(text);
+			readRandom(arrays, reads);
+			start = System.nanoTime();
+			int arrayChecksum = readRandom(arrays, reads);
+			long arrayGetTime = System.nanoTime() - start;
+			random = new Random(SEED);
+			for (int i = 0; i < adds; i++) {
+				arrays.add('x', random.nextInt(n));
+			}
+			start = System.nanoTime();
+			for (int i = 0; i < adds; i++) {
+				arrays.add('x', random.nextInt(n));
+			}
+			long arrayAddTime = System.nanoTime() - start;
+			System.out.printf(
+					"  n=%8d  EditTree get %6.1f ns  add %6.1f ns   ArrayEditTree get %6.1f ns  add %6.1f ns%s%n", n,
+					(double) getTime / reads, (double) addTime / adds, (double) arrayGetTime / reads,
+					(double) arrayAddTime / adds, (checksum == arrayChecksum) ? "" : "  (checksums differ)");
+		}
+	}
+
+	/**
+	 * Heap use and the length of a full garbage collection with a 20M
+	 * character document in an EditTree, in an ArrayEditTree on the heap and
+	 * in an ArrayEditTree in an OffHeapNodeStore.
+	 */
+	private static void benchmarkOffHeap() {
+		int n = 20000000;
+		int reads = 1000000;
+		System.out.println("A " + n + " character document on and off the heap");
+		String text = text(n);
+		long before = usedHeap();
+		EditTree t = new EditTree(text);
+		long heap = usedHeap() - before;
+		long pause = fullCollectionTime();
+		readRandom(t, reads);
+		long start = System.nanoTime();
+		readRandom(t, reads);
+		long getTime = System.nanoTime() - start;
+		System.out.printf("  EditTree                    heap %6d MB  off-heap %6d MB  full GC %6.1f ms  get %6.1f ns%n",
+				heap >> 20, 0, pause / 1e6, (double) getTime / reads);
+		t = null;
+
+		before = usedHeap();
+		ArrayEditTree arrays = new ArrayEditTree(text);
+		heap = usedHeap() - before;
+		pause = fullCollectionTime();
+		readRandom(arrays, reads);
+		start = System.nanoTime();
+		readRandom(arrays, reads);
+		getTime = System.nanoTime() - start;
+		System.out.printf("  ArrayEditTree               heap %6d MB  off-heap %6d MB  full GC %6.1f ms  get %6.1f ns%n",
+				heap >> 20, 0, pause / 1e6, (double) getTime / reads);
+		arrays = null;
+
+		OffHeapNodeStore store = new OffHeapNodeStore();
+		before = usedHeap();
+		arrays = new ArrayEditTree(text, store);
+		heap = usedHeap() - before;
+		pause = fullCollectionTime();
+		readRandom(arrays, reads);
+		start = System.nanoTime();
+		readRandom(arrays, reads);
+		getTime = System.nanoTime() - start;
+		System.out.printf("  ArrayEditTree, off the heap heap %6d MB  off-heap %6d MB  full GC %6.1f ms  get %6.1f ns%n",
+				heap >> 20, store.memoryUsed() >> 20, pause / 1e6, (double) getTime / reads);
+		store.close();
+	}
+
+	/**
+	 * @return nanoseconds taken by one full garbage collection
+	 */
+	private static long fullCollectionTime() {
+		long start = System.nanoTime();
+		System.gc();
+		return System.nanoTime() - start;
+	}
+
+	private static int readRandom(ArrayEditTree t, int reads) {
+		Random random = new Random(SEED);
+		int size = t.size();
+		int checksum = 0;
+		for (int i = 0; i < reads; i++) {
+			checksum += t.get(random.nextInt(size));
+		}
+		return checksum;
+	}
+
+	/**
+	 * @return bytes of heap in use after asking for a few garbage collections
+	 */
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 4; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static String text(int n) {
+		char[] chars = new char[n];
+		for (int i = 0; i < n; i++) {
+			chars[i] = (char) ('a' + i % 26);
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Making small trees. No display is made until show() is called, so this
+	 * should only cost the EditTree and its nodes.
+	 */
+	private static void benchmarkConstruct() {
+		System.out.println("EditTree() and EditTree(char)");
+		int trees = 1000000;
+		EditTree[] keep = new EditTree[1000];
+		for (int round = 0; round < 2; round++) {
+			long bytes = allocatedBytes();
+			long start = System.nanoTime();
+			for (int i = 0; i < trees; i++) {
+				keep[i % keep.length] = new EditTree();
+			}
+			long emptyTime = System.nanoTime() - start;
+			long emptyBytes = allocatedBytes() - bytes;
+
+			bytes = allocatedBytes();
+			start = System.nanoTime();
+			for (int i = 0; i < trees; i++) {
+				keep[i % keep.length] = new EditTree((char) ('a' + i % 26));
+			}
+			long charTime = System.nanoTime() - start;
+			long charBytes = allocatedBytes() - bytes;
+			if (round > 0) {
+				System.out.printf("  EditTree() %6.1f ns %5.1f B   EditTree(char) %6.1f ns %5.1f B%n",
+						(double) emptyTime / trees, (double) emptyBytes / trees, (double) charTime / trees,
+						(double) charBytes / trees);
+			}
+		}
+	}
+
+	/**
+	 * Drawing trees of 1K to 1M nodes into an offscreen image with no window,
+	 * the way DisplayableBinaryTree draws its window. Laying out is timed
+	 * apart from painting a frame, which happens on every repaint. A whole
+	 * layout follows an edit that changes links all over, like split; after
+	 * an add or a delete only the nodes above it are laid out again. Frames
+	 * are timed showing the whole tree, where small subtrees are drawn as
+	 * triangles, and zoomed all the way in, where every node in view is drawn
+	 * with its text. Once a tree is laid out and the fonts are found, a frame
+	 * should allocate nothing.
+	 */
+	private static void benchmarkRender() {
+		System.out.println("DisplayableBinaryTree layout and paint, " + RENDER_WIDTH + "x" + RENDER_HEIGHT + " headless");
+		System.setProperty("java.awt.headless", "true");
+		BufferedImage image = new BufferedImage(RENDER_WIDTH, RENDER_HEIGHT, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g2 = image.createGraphics();
+		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		int[] sizes = { 1000, 10000, 100000, 1000000 };
+		// warm up so the JIT has compiled the paint path, including the
+		// labels that only fit on the triangles of small trees
+		for (int n : new int[] { sizes[0], sizes[2] }) {
+			EditTree t = new EditTree(text(n));
+			DisplayableBinaryTree warmUp = new DisplayableBinaryTree(t, RENDER_WIDTH, RENDER_HEIGHT);
+			t.setDisplay(warmUp);
+			renderFrames(warmUp, n, g2, 1);
+			renderFrames(warmUp, n, g2, Double.MAX_VALUE);
+			layOutAfterEdits(t, warmUp);
+		}
+		for (int n : sizes) {
+			EditTree t = new EditTree(text(n));
+			DisplayableBinaryTree display = new DisplayableBinaryTree(t, RENDER_WIDTH, RENDER_HEIGHT);
+			t.setDisplay(display);
+			// the first layout makes every wrapper, later ones reuse them
+			display.layOutTree();
+			display.treeChanged();
+			long bytes = allocatedBytes();
+			long start = System.nanoTime();
+			display.layOutTree();
+			long layoutTime = System.nanoTime() - start;
+			long layoutBytes = allocatedBytes() - bytes;
+			String whole = renderFrames(display, n, g2, 1);
+			String zoomed = renderFrames(display, n, g2, Double.MAX_VALUE);
+			System.out.printf("  n=%8d  whole layout %9.2f ms %6.1f B/node   after an edit %8.2f us%n", n,
+					layoutTime / 1e6, (double) layoutBytes / n, layOutAfterEdits(t, display) / 1e3);
+			System.out.println("              " + whole);
+			System.out.println("              " + zoomed);
+		}
+		g2.dispose();
+	}
+
+	/**
+	 * Adds and deletes at random positions in t, laying out display after
+	 * each edit. Only the layouts are timed, and t ends up the same size.
+	 *
+	 * @return the average time of one layout in nanoseconds
+	 */
+	private static double layOutAfterEdits(EditTree t, DisplayableBinaryTree display) {
+		int size = t.size();
+		Random random = new Random(SEED);
+		int edits = 2000;
+		long time = 0;
+		for (int i = 0; i < edits; i++) {
+			if (i % 2 == 0) {
+				t.add('x', random.nextInt(size + 1));
+			} else {
+				t.delete(random.nextInt(size));
+			}
+			long start = System.nanoTime();
+			display.layOutTree();
+			time += System.nanoTime() - start;
+		}
+		return (double) time / edits;
+	}
+
+	/**
+	 * Paints display, of a tree of size nodes, into g2 at the given zoom,
+	 * centered on the middle node, for at least half a second after a
+	 * warm-up.
+	 *
+	 * @return the frame time and allocation per frame
+	 */
+	private static String renderFrames(DisplayableBinaryTree display, int size, Graphics2D g2, double zoom) {
+		display.setView(zoom, size / 2);
+		int frames = 0;
+		long start = System.nanoTime();
+		while (frames < 5 || System.nanoTime() - start < 250000000L) {
+			display.paintTree(g2);
+			frames++;
+		}
+		frames = 0;
+		// reading the counter allocates too, so that is left out
+		long counterBytes = allocatedBytes();
+		counterBytes = allocatedBytes() - counterBytes;
+		long bytes = allocatedBytes();
+		start = System.nanoTime();
+		long time;
+		do {
+			display.paintTree(g2);
+			frames++;
+			time = System.nanoTime() - start;
+		} while (frames < 5 || time < 500000000L);
+		bytes = allocatedBytes() - bytes - counterBytes;
+		return String.format("%-11s %9.3f ms/frame %8.1f B/frame", (zoom == 1) ? "whole tree" : "zoomed in",
+				time / 1e6 / frames, (double) bytes / frames);
+	}
+
+	/**
+	 * Saving a document: toString(), which makes one array of the whole text,
+	 * against writeTo(Writer), which only ever holds one chunk. The writer
+	 * throws the characters away so only the tree's side is measured.
+	 */
+	private static void benchmarkWrite() {
+		System.out.println("toString() and writeTo(Writer)");
+		Writer discard = new Writer() {
+			@Override
+			public void write(char[] chars, int offset, int length) {
+				// nothing
+			}
+
+			@Override
+			public void flush() {
+				// nothing
+			}
+
+			@Override
+			public void close() {
+				// nothing
+			}
+		};
+		EditTree warmUp = new EditTree(text(SIZES[0]));
+		for (int i = 0; i < 20; i++) {
+			warmUp.toString();
+			writeQuietly(warmUp, discard);
+		}
+		for (int n : SIZES) {
+			EditTree t = new EditTree(text(n));
+			// best of three, since one pass over a big tree is easily
+			// thrown off by the collector
+			long stringTime = Long.MAX_VALUE;
+			long writeTime = Long.MAX_VALUE;
+			long stringBytes = 0;
+			long writeBytes = 0;
+			for (int round = 0; round < 3; round++) {
+				long bytes = allocatedBytes();
+				long start = System.nanoTime();
+				t.toString();
+				stringTime = Math.min(stringTime, System.nanoTime() - start);
+				stringBytes = allocatedBytes() - bytes;
+
+				bytes = allocatedBytes();
+				start = System.nanoTime();
+				writeQuietly(t, discard);
+				writeTime = Math.min(writeTime, System.nanoTime() - start);
+				writeBytes = allocatedBytes() - bytes;
+			}
+			System.out.printf("  n=%8d  toString %6.2f ns/char %6.2f B/char   writeTo %6.2f ns/char %9d B%n", n,
+					(double) stringTime / n, (double) stringBytes / n, (double) writeTime / n, writeBytes);
+		}
+	}
+
+	/**
+	 * toCharArray(false) against toCharArray(true), which copies large
+	 * subtrees on the common ForkJoinPool and should speed up with the number
+	 * of processors.
+	 */
+	private static void benchmarkMaterialize() {
+		System.out.println("toCharArray(false) against toCharArray(true), "
+				+ Runtime.getRuntime().availableProcessors() + " processors");
+		EditTree warmUp = new EditTree(text(SIZES[1]));
+		for (int i = 0; i < 20; i++) {
+			warmUp.toCharArray(false);
+			warmUp.toCharArray(true);
+		}
+		int[] sizes = { 100000, 1000000, 10000000 };
+		for (int n : sizes) {
+			EditTree t = new EditTree(text(n));
+			long sequentialTime = Long.MAX_VALUE;
+			long parallelTime = Long.MAX_VALUE;
+			for (int round = 0; round < 3; round++) {
+				long start = System.nanoTime();
+				t.toCharArray(false);
+				sequentialTime = Math.min(sequentialTime, System.nanoTime() - start);
+				start = System.nanoTime();
+				t.toCharArray(true);
+				parallelTime = Math.min(parallelTime, System.nanoTime() - start);
+			}
+			System.out.printf("  n=%8d  sequential %8.2f ms %5.0f Mchar/s   parallel %8.2f ms %5.0f Mchar/s%n", n,
+					sequentialTime / 1e6, n / (sequentialTime / 1e3), parallelTime / 1e6, n / (parallelTime / 1e3));
+		}
+	}
+
+	private static void writeQuietly(EditTree t, Writer out) {
+		try {
+			t.writeTo(out);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Viewport-sized get(int, int) reads. The cost per character should stay
+	 * the same as slices and documents get bigger.
+	 */
+	private static void benchmarkRange() {
+		System.out.println("get(int, int) of viewport-sized slices");
+		int n = SIZES[SIZES.length - 1];
+		EditTree t = new EditTree(text(n));
+		Random random = new Random(SEED);
+		for (int length = 8 * 1024; length <= 64 * 1024; length *= 2) {
+			int reads = 200;
+			for (int i = 0; i < reads; i++) {
+				t.get(random.nextInt(n - length), length);
+			}
+			long start = System.nanoTime();
+			for (int i = 0; i < reads; i++) {
+				t.get(random.nextInt(n - length), length);
+			}
+			long time = System.nanoTime() - start;
+			System.out.printf("  n=%8d  length %6d  %8.2f us/read  %5.2f ns/char%n", n, length, time / 1e3 / reads,
+					(double) time / reads / length);
+		}
+	}
+
+	private static int readRandom(EditTree t, int reads) {
+		Random random = new Random(SEED);
+		int size = t.size();
+		int checksum = 0;
+		for (int i = 0; i < reads; i++) {
+			checksum += t.get(random.nextInt(size));
+		}
+		return checksum;
+	}
+
+	private static EditTree appendTree(int n) {
+		EditTree t = new EditTree();
+		for (int i = 0; i < n; i++) {
+			t.add((char) ('a' + i % 26));
+		}
+		return t;
+	}
+
+	/**
+	 * @return bytes allocated so far by the current thread
+	 */
+	private static long allocatedBytes() {
+		return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+				.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
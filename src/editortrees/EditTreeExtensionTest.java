@@ -0,0 +1,383 @@
+package editortrees;
+
+import static editortrees.TreeChecks.checkTree;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * Tests for the EditTree operations added after the three milestones.
+ */
+public class EditTreeExtensionTest {
+
+	@Test
+	public void testConstructorWithCharArray() {
+		EditTree t = new EditTree(new char[] { 'a', 'b', 'c', 'd', 'e' });
+		assertEquals("abcde", t.toString());
+		assertEquals("[c2=, a0\\, b0=, d0\\, e0=]", t.toDebugString());
+		assertEquals(0, t.totalRotationCount());
+
+		t = new EditTree(new char[0]);
+		assertEquals("", t.toString());
+		assertEquals(-1, t.height());
+	}
+
+	@Test
+	public void testConstructorWithCharSequence() {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			text.append((char) ('a' + i % 26));
+			EditTree t = new EditTree(text);
+			assertEquals(text.toString(), t.toString());
+			checkTree(t);
+			assertEquals(0, t.totalRotationCount());
+		}
+	}
+
+	@Test
+	public void testParallelConstruction() {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			text.append((char) ('a' + i % 26));
+		}
+		EditTree sequential = new EditTree(text, false);
+		EditTree parallel = new EditTree(text, true);
+		assertEquals(text.toString(), parallel.toString());
+		assertEquals(0, parallel.totalRotationCount());
+		assertSameShape(sequential.getRoot(), parallel.getRoot());
+
+		parallel.add('!', 50000);
+		assertEquals('!', parallel.get(50000));
+		assertEquals('!', parallel.delete(50000));
+		assertEquals(text.toString(), parallel.toString());
+	}
+
+	private void assertSameShape(Node expected, Node actual) {
+		if (expected == EditTree.NULL_NODE) {
+			assertTrue(actual == EditTree.NULL_NODE);
+			return;
+		}
+		assertEquals(expected.element, actual.element);
+		assertEquals(expected.rank, actual.rank);
+		assertEquals(expected.balance, actual.balance);
+		assertTrue(actual.left == EditTree.NULL_NODE || actual.left.parent == actual);
+		assertTrue(actual.right == EditTree.NULL_NODE || actual.right.parent == actual);
+		assertSameShape(expected.left, actual.left);
+		assertSameShape(expected.right, actual.right);
+	}
+
+	@Test
+	public void testConcatenateKeepsRotationCount() {
+		EditTree t1 = new EditTree();
+		EditTree t2 = new EditTree();
+		t1.add('a');
+		t1.add('b');
+		t1.add('c'); // causes rotation
+		t2.add('d');
+		t2.add('e');
+		t2.add('f'); // causes rotation
+		t2.delete(2);
+		assertEquals(1, t1.totalRotationCount());
+		assertEquals(1, t2.totalRotationCount());
+
+		t1.concatenate(t2);
+		assertEquals("abcde", t1.toString());
+		assertEquals(2, t1.totalRotationCount());
+		assertEquals("", t2.toString());
+		assertEquals(0, t2.totalRotationCount());
+	}
+
+	@Test
+	public void testInsertString() {
+		EditTree t = new EditTree();
+		t.insert("", 0);
+		assertEquals("", t.toString());
+		t.insert("d", 0);
+		t.insert("ab", 0);
+		t.insert("c", 2);
+		t.insert("efghijklmnopqrstuvwxyz", 4);
+		assertEquals("abcdefghijklmnopqrstuvwxyz", t.toString());
+		checkTree(t);
+
+		StringBuilder expected = new StringBuilder(t.toString());
+		t.insert(new StringBuilder("0123456789"), 13);
+		expected.insert(13, "0123456789");
+		assertEquals(expected.toString(), t.toString());
+		checkTree(t);
+
+		// ranks and balance codes must still be right for later edits
+		t.add('!', 20);
+		expected.insert(20, '!');
+		assertEquals('5', t.delete(18));
+		expected.deleteCharAt(18);
+		assertEquals(expected.toString(), t.toString());
+	}
+
+	@Test
+	public void testInsertInvalidPosition() {
+		EditTree t = new EditTree("abc");
+		try {
+			t.insert("x", 4);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		try {
+			t.insert("x", -1);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		assertEquals("abc", t.toString());
+	}
+
+	@Test
+	public void testDeleteRange() {
+		EditTree t = new EditTree("abcdefghijklmnopqrstuvwxyz");
+		EditTree removed = t.delete(3, 5);
+		assertEquals("defgh", removed.toString());
+		assertEquals("abcijklmnopqrstuvwxyz", t.toString());
+		checkTree(t);
+
+		// through the end of the document
+		removed = t.delete(15, 6);
+		assertEquals("uvwxyz", removed.toString());
+		assertEquals("abcijklmnopqrst", t.toString());
+
+		removed = t.delete(0, 15);
+		assertEquals("abcijklmnopqrst", removed.toString());
+		assertEquals("", t.toString());
+		assertEquals("", t.delete(0, 0).toString());
+
+		try {
+			t.delete(0, 1);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+	}
+
+	@Test
+	public void testDiscardRange() {
+		EditTree t = new EditTree("abcdefghijklmnopqrstuvwxyz");
+		t.discard(20, 6);
+		assertEquals("abcdefghijklmnopqrst", t.toString());
+		t.discard(0, 1);
+		t.discard(5, 0);
+		t.discard(5, 10);
+		assertEquals("bcdefqrst", t.toString());
+		checkTree(t);
+		t.add('!', 4);
+		assertEquals("bcde!fqrst", t.toString());
+
+		try {
+			t.discard(5, 6);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		try {
+			t.discard(-1, 2);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+	}
+
+	@Test
+	public void testEditsAfterBulkConstruction() {
+		// Adds and deletes only work if the builder set ranks and balance
+		// codes correctly.
+		EditTree t = new EditTree("abcdefghijkl");
+		t.add('x', 0);
+		t.add('y', 13);
+		t.add('z', 6);
+		assertEquals("xabcdezfghijkly", t.toString());
+		assertEquals('x', t.delete(0));
+		assertEquals('z', t.delete(5));
+		assertEquals("abcdefghijkly", t.toString());
+		checkTree(t);
+	}
+
+	@Test
+	public void testSizeAndHeightKeptUpToDate() {
+		// size() and height() are kept in fields now, so compare them with
+		// the values counted from the nodes after every kind of edit.
+		Random random = new Random(230);
+		EditTree t = new EditTree("abcdefghijklmnopqrstuvwxyz");
+		for (int i = 0; i < 500; i++) {
+			int size = t.size();
+			switch (random.nextInt(6)) {
+			case 0:
+				t.add('x', random.nextInt(size + 1));
+				break;
+			case 1:
+				if (size > 0) {
+					t.delete(random.nextInt(size));
+				}
+				break;
+			case 2:
+				t.insert("inserted", random.nextInt(size + 1));
+				break;
+			case 3:
+				int start = random.nextInt(size + 1);
+				EditTree removed = t.delete(start, random.nextInt(size - start + 1));
+				assertEquals(removed.slowSize(), removed.size());
+				assertEquals(removed.slowHeight(), removed.height());
+				break;
+			default:
+				EditTree right = t.split(random.nextInt(size + 1));
+				assertEquals(right.slowSize(), right.size());
+				assertEquals(right.slowHeight(), right.height());
+				right.add('y', 0);
+				t.concatenate(right);
+				assertEquals(0, right.size());
+				assertEquals(-1, right.height());
+			}
+			assertEquals(t.slowSize(), t.size());
+			assertEquals(t.slowHeight(), t.height());
+		}
+	}
+
+	@Test
+	public void testWriteTo() throws IOException {
+		// more than one chunk, and not a whole number of them
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			text.append((char) ('a' + i % 26));
+		}
+		String expected = text.toString();
+		EditTree t = new EditTree(expected);
+		assertEquals(expected, t.toString());
+
+		StringBuilder builder = new StringBuilder("<");
+		t.writeTo(builder);
+		assertEquals("<" + expected, builder.toString());
+
+		StringWriter writer = new StringWriter();
+		t.writeTo(writer);
+		assertEquals(expected, writer.toString());
+		// a Writer passed as an Appendable
+		writer = new StringWriter();
+		t.writeTo((Appendable) writer);
+		assertEquals(expected, writer.toString());
+
+		CharBuffer buffer = CharBuffer.allocate(expected.length() + 2);
+		buffer.put('<');
+		t.writeTo(buffer);
+		assertEquals(expected.length() + 1, buffer.position());
+		buffer.flip();
+		assertEquals("<" + expected, buffer.toString());
+		// a buffer with no array behind it
+		buffer = ByteBuffer.allocateDirect(2 * expected.length()).asCharBuffer();
+		t.writeTo(buffer);
+		buffer.flip();
+		assertEquals(expected, buffer.toString());
+
+		buffer = CharBuffer.allocate(expected.length() - 1);
+		try {
+			t.writeTo(buffer);
+			fail("Did not throw BufferOverflowException");
+		} catch (BufferOverflowException e) {
+			// success
+		}
+		assertEquals(0, buffer.position());
+		try {
+			t.writeTo(CharBuffer.allocate(expected.length()).asReadOnlyBuffer());
+			fail("Did not throw ReadOnlyBufferException");
+		} catch (ReadOnlyBufferException e) {
+			// success
+		}
+
+		EditTree empty = new EditTree();
+		assertEquals("", empty.toString());
+		writer = new StringWriter();
+		empty.writeTo(writer);
+		assertEquals("", writer.toString());
+	}
+
+	@Test
+	public void testParallelToCharArray() {
+		// random edits, so the subtrees are not all the same shape, and big
+		// enough that the copy is split into tasks
+		Random random = new Random(230);
+		EditTree t = new EditTree();
+		for (int i = 0; i < 200000; i++) {
+			t.add((char) ('a' + random.nextInt(26)), random.nextInt(t.size() + 1));
+		}
+		for (int i = 0; i < 50000; i++) {
+			t.delete(random.nextInt(t.size()));
+		}
+		String expected = t.toString();
+		assertEquals(expected, t.toString(true));
+		assertEquals(expected, new String(t.toCharArray(true)));
+		assertEquals(expected, new String(t.toCharArray(false)));
+		assertEquals("", new EditTree().toString(true));
+		assertEquals(0, new EditTree().toCharArray(true).length);
+		assertEquals("x", new EditTree('x').toString(true));
+	}
+
+	@Test
+	public void testCharSequence() {
+		EditTree t = new EditTree("the quick brown fox");
+		assertEquals(19, t.length());
+		assertEquals('q', t.charAt(4));
+		try {
+			t.charAt(19);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+
+		// a CharSequence goes straight into a regex without a copy
+		Matcher matcher = Pattern.compile("b\\w+").matcher(t);
+		assertTrue(matcher.find());
+		assertEquals("brown", matcher.group());
+		assertEquals(10, matcher.start());
+
+		CharSequence quickBrown = t.subSequence(4, 15);
+		assertEquals("quick brown", quickBrown.toString());
+		assertEquals(11, quickBrown.length());
+		assertEquals('b', quickBrown.charAt(6));
+		CharSequence brown = quickBrown.subSequence(6, 11);
+		assertEquals("brown", brown.toString());
+		assertEquals("", brown.subSequence(5, 5).toString());
+		assertTrue(Pattern.matches("q.*n", quickBrown));
+		try {
+			quickBrown.charAt(11);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		try {
+			quickBrown.subSequence(3, 12);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		try {
+			t.subSequence(5, 4);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+
+		// views keep positions, so they see later edits
+		t.insert("very ", 4);
+		assertEquals("very quick ", quickBrown.toString());
+		assertEquals("the very quick brown fox", t.subSequence(0, t.length()).toString());
+		assertEquals(0, new EditTree().length());
+	}
+}
@@ -0,0 +1,111 @@
+package editortrees;
+
+import java.util.Arrays;
+
+/**
+ * Keeps nodes in arrays on the Java heap. The fields a rank descent reads
+ * (the two children and rank, plus parent) sit next to each other in one int
+ * array, four ints per node, so each level of a descent touches one cache
+ * line. Keeping them in separate arrays made every level touch three, and
+ * descents were slower than with Node objects. element and balance are only
+ * read at the end of a descent or while rebalancing, so they get arrays of
+ * their own.
+ */
+final class HeapNodeStore extends NodeStore {
+
+	private int[] links;
+	private char[] element;
+	private byte[] balance;
+
+	HeapNodeStore(int capacity) {
+		capacity = Math.max(capacity, 15) + 1;
+		this.links = new int[4 * capacity];
+		this.element = new char[capacity];
+		this.balance = new byte[capacity];
+	}
+
+	@Override
+	int left(int node) {
+		return this.links[4 * node];
+	}
+
+	@Override
+	int right(int node) {
+		return this.links[4 * node + 1];
+	}
+
+	@Override
+	int rank(int node) {
+		return this.links[4 * node + 2];
+	}
+
+	@Override
+	int parent(int node) {
+		return this.links[4 * node + 3];
+	}
+
+	@Override
+	char element(int node) {
+		return this.element[node];
+	}
+
+	@Override
+	byte balance(int node) {
+		return this.balance[node];
+	}
+
+	@Override
+	void setLeft(int node, int left) {
+		this.links[4 * node] = left;
+	}
+
+	@Override
+	void setRight(int node, int right) {
+		this.links[4 * node + 1] = right;
+	}
+
+	@Override
+	void setRank(int node, int rank) {
+		this.links[4 * node + 2] = rank;
+	}
+
+	@Override
+	void setParent(int node, int parent) {
+		this.links[4 * node + 3] = parent;
+	}
+
+	@Override
+	void setElement(int node, char element) {
+		this.element[node] = element;
+	}
+
+	@Override
+	void setBalance(int node, byte balance) {
+		this.balance[node] = balance;
+	}
+
+	/**
+	 * @return bytes of heap held by the arrays of this store
+	 */
+	long memoryUsed() {
+		return 4L * this.links.length + 2L * this.element.length + this.balance.length;
+	}
+
+	/**
+	 * Grows the arrays, at least doubling them.
+	 */
+	@Override
+	void reserve(long count) {
+		int capacity = this.element.length;
+		if (count <= capacity) {
+			return;
+		}
+		if (count > (Integer.MAX_VALUE - 8) / 4) {
+			throw new OutOfMemoryError("too many nodes for a HeapNodeStore");
+		}
+		capacity = (int) Math.min((Integer.MAX_VALUE - 8) / 4, Math.max(2L * capacity, count));
+		this.links = Arrays.copyOf(this.links, 4 * capacity);
+		this.element = Arrays.copyOf(this.element, capacity);
+		this.balance = Arrays.copyOf(this.balance, capacity);
+	}
+}
@@ -0,0 +1,125 @@
+package editortrees;
+
+/**
+ * Where an ArrayEditTree keeps its nodes. A node is an int id, id 0 plays the
+ * part of NULL_NODE and is never written, and deleted nodes go on a free list
+ * to be reused. Subclasses only decide how the fields of a node are laid out
+ * in memory.
+ *
+ * Trees made by ArrayEditTree.split share the store of the tree they were
+ * split from. Each node in use belongs to exactly one of those trees, and
+ * only that tree may give it back, with ArrayEditTree.release or discard. A
+ * tree that is dropped without that keeps its nodes off the free list for as
+ * long as the store lives.
+ */
+public abstract class NodeStore {
+
+	static final int NIL = 0;
+
+	private int used = 1;
+	private int free = NIL; // first free node; the rest follow right
+	private int freeCount = 0;
+
+	abstract int left(int node);
+
+	abstract int right(int node);
+
+	abstract int rank(int node);
+
+	abstract int parent(int node);
+
+	abstract char element(int node);
+
+	abstract byte balance(int node);
+
+	abstract void setLeft(int node, int left);
+
+	abstract void setRight(int node, int right);
+
+	abstract void setRank(int node, int rank);
+
+	abstract void setParent(int node, int parent);
+
+	abstract void setElement(int node, char element);
+
+	abstract void setBalance(int node, byte balance);
+
+	/**
+	 * Makes room for nodes 0 .. count - 1.
+	 */
+	abstract void reserve(long count);
+
+	/**
+	 * @return a node holding ch with no links, taken from the free list if
+	 *         there is one
+	 */
+	int allocate(char ch) {
+		int node = this.free;
+		if (node != NIL) {
+			this.free = this.right(node);
+			this.freeCount--;
+		} else {
+			node = this.allocateBlock(1);
+		}
+		this.setLeft(node, NIL);
+		this.setRight(node, NIL);
+		this.setRank(node, 0);
+		this.setParent(node, NIL);
+		this.setElement(node, ch);
+		this.setBalance(node, ArrayEditTree.SAME);
+		return node;
+	}
+
+	/**
+	 * @return the first of count never-used nodes with consecutive ids
+	 */
+	int allocateBlock(int count) {
+		if ((long) this.used + count > Integer.MAX_VALUE) {
+			throw new IllegalStateException("too many nodes");
+		}
+		this.reserve((long) this.used + count);
+		int first = this.used;
+		this.used += count;
+		return first;
+	}
+
+	void release(int node) {
+		this.setRight(node, this.free);
+		this.free = node;
+		this.freeCount++;
+	}
+
+	/**
+	 * Puts every node of the subtree below node on the free list, in O(n)
+	 * time with no stack: a node with a left child is rotated right until it
+	 * has none, then it is released and the walk goes on to its right.
+	 */
+	void releaseTree(int node) {
+		while (node != NIL) {
+			int left = this.left(node);
+			if (left == NIL) {
+				int right = this.right(node);
+				this.release(node);
+				node = right;
+			} else {
+				this.setLeft(node, this.right(left));
+				this.setRight(left, node);
+				node = left;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of nodes on the free list
+	 */
+	int freeCount() {
+		return this.freeCount;
+	}
+
+	/**
+	 * @return the number of nodes ever taken from the store, free or not
+	 */
+	int nodesUsed() {
+		return this.used - 1;
+	}
+}
@@ -0,0 +1,183 @@
+package editortrees;
+
+import java.io.Closeable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Keeps nodes outside the Java heap, in direct ByteBuffer pages of 64K nodes
+ * each. The heap only holds the page table, so a document of any size costs
+ * the garbage collector a few thousand small objects, and GC pauses do not
+ * grow with the document. Each node is a 20 byte record: left, right, rank
+ * and parent as ints, then element and balance.
+ *
+ * Direct memory is limited by -XX:MaxDirectMemorySize, which defaults to the
+ * maximum heap size, so raise it when pairing a big document with a small
+ * heap.
+ *
+ * close() gives the memory back right away. The store, and every tree using
+ * it, can not be used after that.
+ */
+public final class OffHeapNodeStore extends NodeStore implements Closeable {
+
+	private static final int NODE_BYTES = 20;
+	private static final int PAGE_BITS = 16;
+	private static final int PAGE_NODES = 1 << PAGE_BITS;
+
+	private ByteBuffer[] pages = new ByteBuffer[0];
+	// pages 0 .. pageCount - 1 are allocated; the rest of the array is room
+	private int pageCount = 0;
+
+	@Override
+	int left(int node) {
+		return this.page(node).getInt(offset(node));
+	}
+
+	@Override
+	int right(int node) {
+		return this.page(node).getInt(offset(node) + 4);
+	}
+
+	@Override
+	int rank(int node) {
+		return this.page(node).getInt(offset(node) + 8);
+	}
+
+	@Override
+	int parent(int node) {
+		return this.page(node).getInt(offset(node) + 12);
+	}
+
+	@Override
+	char element(int node) {
+		return this.page(node).getChar(offset(node) + 16);
+	}
+
+	@Override
+	byte balance(int node) {
+		return this.page(node).get(offset(node) + 18);
+	}
+
+	@Override
+	void setLeft(int node, int left) {
+		this.page(node).putInt(offset(node), left);
+	}
+
+	@Override
+	void setRight(int node, int right) {
+		this.page(node).putInt(offset(node) + 4, right);
+	}
+
+	@Override
+	void setRank(int node, int rank) {
+		this.page(node).putInt(offset(node) + 8, rank);
+	}
+
+	@Override
+	void setParent(int node, int parent) {
+		this.page(node).putInt(offset(node) + 12, parent);
+	}
+
+	@Override
+	void setElement(int node, char element) {
+		this.page(node).putChar(offset(node) + 16, element);
+	}
+
+	@Override
+	void setBalance(int node, byte balance) {
+		this.page(node).put(offset(node) + 18, balance);
+	}
+
+	private ByteBuffer page(int node) {
+		ByteBuffer[] pages = this.pages;
+		if (pages == null) {
+			throw new IllegalStateException("the NodeStore has been closed");
+		}
+		return pages[node >>> PAGE_BITS];
+	}
+
+	private static int offset(int node) {
+		return (node & (PAGE_NODES - 1)) * NODE_BYTES;
+	}
+
+	/**
+	 * Adds pages until nodes 0 .. count - 1 fit. Pages that are already there
+	 * never move. Only the array of pages grows ahead of need; direct memory
+	 * is only taken for pages that are needed now.
+	 */
+	@Override
+	void reserve(long count) {
+		int needed = (int) ((count + PAGE_NODES - 1) >>> PAGE_BITS);
+		if (this.pages == null) {
+			throw new IllegalStateException("the NodeStore has been closed");
+		}
+		if (needed <= this.pageCount) {
+			return;
+		}
+		if (needed > this.pages.length) {
+			this.pages = Arrays.copyOf(this.pages, Math.max(needed, 2 * this.pages.length));
+		}
+		for (; this.pageCount < needed; this.pageCount++) {
+			this.pages[this.pageCount] = ByteBuffer.allocateDirect(PAGE_NODES * NODE_BYTES)
+					.order(ByteOrder.nativeOrder());
+		}
+	}
+
+	/**
+	 * @return bytes of direct memory held by this store
+	 */
+	public long memoryUsed() {
+		return (this.pages == null) ? 0 : (long) this.pageCount * PAGE_NODES * NODE_BYTES;
+	}
+
+	/**
+	 * Frees all pages. Calling close again does nothing.
+	 */
+	@Override
+	public void close() {
+		if (this.pages == null) {
+			return;
+		}
+		for (int i = 0; i < this.pageCount; i++) {
+			free(this.pages[i]);
+		}
+		this.pages = null;
+		this.pageCount = 0;
+	}
+
+	// Java 9 and later can free a direct buffer on request through
+	// Unsafe.invokeCleaner. Java 8 can not, and then the memory goes back
+	// when the garbage collector finds the buffer.
+	private static final Object UNSAFE;
+	private static final Method INVOKE_CLEANER;
+
+	static {
+		Object unsafe = null;
+		Method invokeCleaner = null;
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			unsafe = field.get(null);
+		} catch (Exception e) {
+			invokeCleaner = null;
+		}
+		UNSAFE = unsafe;
+		INVOKE_CLEANER = invokeCleaner;
+	}
+
+	private static void free(ByteBuffer page) {
+		if (INVOKE_CLEANER == null) {
+			return;
+		}
+		try {
+			INVOKE_CLEANER.invoke(UNSAFE, page);
+		} catch (Exception e) {
+			// leave it to the garbage collector
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package editortrees;
+
+import java.io.IOException;
+
+/**
+ * What EditTree, ChunkedEditTree and ArrayEditTree have in common, so code
+ * that edits text can be written once and handed any of them. Positions are
+ * inorder positions of characters, counted from 0.
+ *
+ * @param <T>
+ *            the tree type itself, so that split and delete hand back the
+ *            same kind of tree and concatenate only takes that kind
+ */
+public interface TextTree<T extends TextTree<T>> extends CharSequence {
+
+	/**
+	 * @return the number of characters in this tree
+	 */
+	int size();
+
+	/**
+	 * @return the height of this tree
+	 */
+	int height();
+
+	/**
+	 * @return number of rotations since tree was created. A double rotation
+	 *         counts as two.
+	 */
+	int totalRotationCount();
+
+	/**
+	 * @param ch
+	 *            character to add to the end of this tree.
+	 */
+	void add(char ch);
+
+	/**
+	 * @param ch
+	 *            character to add
+	 * @param pos
+	 *            character added in this inorder position
+	 * @throws IndexOutOfBoundsException
+	 *             if pos is negative or too large for this tree
+	 */
+	void add(char ch, int pos) throws IndexOutOfBoundsException;
+
+	/**
+	 * Adds all of text so that its first character ends up at pos.
+	 *
+	 * @param text
+	 *            characters to add
+	 * @param pos
+	 *            inorder position of the first added character
+	 * @throws IndexOutOfBoundsException
+	 *             if pos is negative or too large for this tree
+	 */
+	void insert(CharSequence text, int pos) throws IndexOutOfBoundsException;
+
+	/**
+	 * @param pos
+	 *            position in the tree
+	 * @return the character at that position
+	 * @throws IndexOutOfBoundsException
+	 */
+	char get(int pos) throws IndexOutOfBoundsException;
+
+	/**
+	 * @param pos
+	 *            location of the beginning of the string to retrieve
+	 * @param length
+	 *            length of the string to retrieve
+	 * @return string of length that starts in position pos
+	 * @throws IndexOutOfBoundsException
+	 *             unless both pos and pos+length-1 are legitimate indexes
+	 *             within this tree.
+	 */
+	String get(int pos, int length) throws IndexOutOfBoundsException;
+
+	/**
+	 * @param pos
+	 *            position of character to delete from this tree
+	 * @return the character that is deleted
+	 * @throws IndexOutOfBoundsException
+	 */
+	char delete(int pos) throws IndexOutOfBoundsException;
+
+	/**
+	 * @param start
+	 *            position of beginning of string to delete
+	 * @param length
+	 *            length of string to delete
+	 * @return a tree containing the deleted string
+	 * @throws IndexOutOfBoundsException
+	 *             unless both start and start+length-1 are in range for this
+	 *             tree.
+	 */
+	T delete(int start, int length) throws IndexOutOfBoundsException;
+
+	/**
+	 * Like delete(int, int), but the removed characters are thrown away.
+	 *
+	 * @param start
+	 *            position of beginning of string to delete
+	 * @param length
+	 *            length of string to delete
+	 * @throws IndexOutOfBoundsException
+	 *             unless both start and start+length-1 are in range for this
+	 *             tree.
+	 */
+	void discard(int start, int length) throws IndexOutOfBoundsException;
+
+	/**
+	 * Appends the contents of other to this tree and makes other empty.
+	 *
+	 * @param other
+	 * @throws IllegalArgumentException
+	 *             if this == other
+	 */
+	void concatenate(T other) throws IllegalArgumentException;
+
+	/**
+	 * @param pos
+	 *            where to split this tree
+	 * @return a new tree containing all of the characters of this tree whose
+	 *         positions are >= pos. They are removed from this tree.
+	 * @throws IndexOutOfBoundsException
+	 */
+	T split(int pos) throws IndexOutOfBoundsException;
+
+	/**
+	 * Writes the characters of this tree to out, in order, without copying
+	 * them all into one String first.
+	 *
+	 * @param out
+	 * @throws IOException
+	 *             if out throws one
+	 */
+	void writeTo(Appendable out) throws IOException;
+
+	/**
+	 * @return the nodes of this tree in preorder, each as its characters
+	 *         followed by its rank and balance code, like [b1=, a0=, c0=]
+	 */
+	String toDebugString();
+}
@@ -0,0 +1,87 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Runs the same edits on every kind of TextTree through the interface alone,
+ * and checks each against a StringBuilder.
+ */
+public class TextTreeTest {
+
+	/**
+	 * Makes random edits of every kind to t, which must start out empty.
+	 */
+	private <T extends TextTree<T>> void checkEdits(T t) throws IOException {
+		Random random = new Random(230);
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 3000; i++) {
+			int pos = random.nextInt(t.size() + 1);
+			int length = random.nextInt(Math.min(10, t.size() - pos) + 1);
+			switch (random.nextInt(6)) {
+			case 0:
+				char ch = (char) ('a' + random.nextInt(26));
+				t.add(ch, pos);
+				expected.insert(pos, ch);
+				break;
+			case 1:
+				String text = "inserted text " + i;
+				t.insert(text, pos);
+				expected.insert(pos, text);
+				break;
+			case 2:
+				if (pos < t.size()) {
+					assertEquals(expected.charAt(pos), t.delete(pos));
+					expected.deleteCharAt(pos);
+				}
+				break;
+			case 3:
+				assertEquals(expected.substring(pos, pos + length), t.delete(pos, length).toString());
+				expected.delete(pos, pos + length);
+				break;
+			case 4:
+				t.discard(pos, length);
+				expected.delete(pos, pos + length);
+				break;
+			default:
+				t.concatenate(t.split(pos));
+				break;
+			}
+			assertEquals(expected.length(), t.size());
+			assertEquals(expected.length(), t.length());
+		}
+		assertEquals(expected.toString(), t.toString());
+		assertEquals(expected.substring(10, 60), t.get(10, 50));
+		assertEquals(expected.substring(10, 60), t.subSequence(10, 60).toString());
+		for (int i = 0; i < t.length(); i++) {
+			assertEquals(expected.charAt(i), t.charAt(i));
+		}
+		StringWriter writer = new StringWriter();
+		t.writeTo(writer);
+		assertEquals(expected.toString(), writer.toString());
+		StringBuilder appended = new StringBuilder();
+		t.writeTo(appended);
+		assertEquals(expected.toString(), appended.toString());
+	}
+
+	@Test
+	public void testEditTree() throws IOException {
+		checkEdits(new EditTree());
+	}
+
+	@Test
+	public void testChunkedEditTree() throws IOException {
+		checkEdits(new ChunkedEditTree(8));
+	}
+
+	@Test
+	public void testArrayEditTree() throws IOException {
+		checkEdits(new ArrayEditTree());
+		checkEdits(new ArrayEditTree(new HeapNodeStore(0)));
+	}
+}
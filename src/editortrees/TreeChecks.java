@@ -0,0 +1,173 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import editortrees.ChunkedEditTree.Chunk;
+import editortrees.Node.Code;
+
+/**
+ * The AVL height bound and the invariant checks that the tests of EditTree,
+ * ChunkedEditTree and ArrayEditTree share. Each check walks the whole tree
+ * and asserts that every rank, parent link and balance code is right, so it
+ * is O(n).
+ */
+final class TreeChecks {
+
+	private TreeChecks() {
+	}
+
+	/**
+	 * @return the greatest height an AVL tree of this many nodes can have
+	 */
+	static int maxHeight(int nodes) {
+		int height = -1;
+		int maxNodes = 1;
+		int prevMaxNodes = 0;
+
+		while (nodes >= maxNodes) {
+			int temp = prevMaxNodes;
+			prevMaxNodes = maxNodes;
+			maxNodes = temp + maxNodes + 1;
+			height++;
+		}
+
+		return height;
+	}
+
+	/**
+	 * Checks every node of t, its size and its height.
+	 */
+	static void checkTree(EditTree t) {
+		assertEquals(t.size(), checkNodes(t.getRoot()));
+		assertEquals(checkBalance(t.getRoot()), t.height());
+		assertTrue(t.height() <= maxHeight(t.size()));
+	}
+
+	/**
+	 * Checks every chunk of t, its size and its height. The height bound is
+	 * for the number of chunks, not characters.
+	 */
+	static void checkTree(ChunkedEditTree t) {
+		assertEquals(t.size(), checkChunks(t.getRoot()));
+		assertEquals(checkBalance(t.getRoot()), t.height());
+		assertTrue(t.height() <= maxHeight(countChunks(t.getRoot())));
+	}
+
+	/**
+	 * Checks every node of t, its size and its height.
+	 */
+	static void checkTree(ArrayEditTree t) {
+		NodeStore nodes = t.getNodes();
+		assertEquals(t.size(), checkNodes(nodes, t.getRoot()));
+		assertEquals(checkBalance(nodes, t.getRoot()), t.height());
+		assertTrue(t.height() <= maxHeight(t.size()));
+	}
+
+	/**
+	 * Checks ranks and parent links of every node, and returns the number of
+	 * nodes below node.
+	 */
+	static int checkNodes(Node node) {
+		if (node == EditTree.NULL_NODE) {
+			return 0;
+		}
+		assertTrue(node.left == EditTree.NULL_NODE || node.left.parent == node);
+		assertTrue(node.right == EditTree.NULL_NODE || node.right.parent == node);
+		int leftSize = checkNodes(node.left);
+		assertEquals(leftSize, node.rank);
+		return leftSize + 1 + checkNodes(node.right);
+	}
+
+	/**
+	 * Checks the balance code of every node, and returns the height of node.
+	 */
+	static int checkBalance(Node node) {
+		if (node == EditTree.NULL_NODE) {
+			return -1;
+		}
+		return checkCode(checkBalance(node.left), checkBalance(node.right), node.balance);
+	}
+
+	/**
+	 * Checks ranks and parent links of every chunk, and returns the number of
+	 * characters below chunk.
+	 */
+	static int checkChunks(Chunk chunk) {
+		if (chunk == ChunkedEditTree.NULL_CHUNK) {
+			return 0;
+		}
+		assertTrue(chunk.count > 0);
+		assertTrue(chunk.left == ChunkedEditTree.NULL_CHUNK || chunk.left.parent == chunk);
+		assertTrue(chunk.right == ChunkedEditTree.NULL_CHUNK || chunk.right.parent == chunk);
+		int leftSize = checkChunks(chunk.left);
+		assertEquals(leftSize, chunk.rank);
+		return leftSize + chunk.count + checkChunks(chunk.right);
+	}
+
+	static int countChunks(Chunk chunk) {
+		if (chunk == ChunkedEditTree.NULL_CHUNK) {
+			return 0;
+		}
+		return 1 + countChunks(chunk.left) + countChunks(chunk.right);
+	}
+
+	/**
+	 * Checks the balance code of every chunk, and returns the height of chunk.
+	 */
+	static int checkBalance(Chunk chunk) {
+		if (chunk == ChunkedEditTree.NULL_CHUNK) {
+			return -1;
+		}
+		return checkCode(checkBalance(chunk.left), checkBalance(chunk.right), chunk.balance);
+	}
+
+	/**
+	 * Checks ranks and parent links of every node in nodes below node, and
+	 * returns their number.
+	 */
+	static int checkNodes(NodeStore nodes, int node) {
+		if (node == NodeStore.NIL) {
+			return 0;
+		}
+		int left = nodes.left(node);
+		int right = nodes.right(node);
+		assertTrue(left == NodeStore.NIL || nodes.parent(left) == node);
+		assertTrue(right == NodeStore.NIL || nodes.parent(right) == node);
+		int leftSize = checkNodes(nodes, left);
+		assertEquals(leftSize, nodes.rank(node));
+		return leftSize + 1 + checkNodes(nodes, right);
+	}
+
+	/**
+	 * Checks the balance code of every node in nodes below node, and returns
+	 * the height of node.
+	 */
+	static int checkBalance(NodeStore nodes, int node) {
+		if (node == NodeStore.NIL) {
+			return -1;
+		}
+		int left = checkBalance(nodes, nodes.left(node));
+		int right = checkBalance(nodes, nodes.right(node));
+		Code code = (nodes.balance(node) == ArrayEditTree.LEFT) ? Code.LEFT
+				: (nodes.balance(node) == ArrayEditTree.RIGHT) ? Code.RIGHT : Code.SAME;
+		return checkCode(left, right, code);
+	}
+
+	/**
+	 * Checks that subtrees of heights left and right are balanced and that
+	 * code says which one is taller, and returns the height of their parent.
+	 */
+	private static int checkCode(int left, int right, Code code) {
+		if (left > right) {
+			assertEquals(left, right + 1);
+			assertEquals(Code.LEFT, code);
+		} else if (right > left) {
+			assertEquals(right, left + 1);
+			assertEquals(Code.RIGHT, code);
+		} else {
+			assertEquals(Code.SAME, code);
+		}
+		return Math.max(left, right) + 1;
+	}
+}
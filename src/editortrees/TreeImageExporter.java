@@ -0,0 +1,234 @@
+package editortrees;
+
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javax.imageio.ImageIO;
+
+import editortrees.Node.Code;
+
+/**
+ * Draws the shape of an EditTree into PNG files without opening a window, so
+ * it also works on servers with no display. The picture is cut into square
+ * tiles named tile-ROW-COLUMN.png. The tiles are drawn on the common
+ * ForkJoinPool and each is written out as soon as it is done.
+ *
+ * Each tile only walks the part of the tree that shows in it and only keeps
+ * the path it is on, so memory depends on the tile size and the number of
+ * threads, not on the size of the tree. Nodes and arrows look like they do in
+ * DisplayableBinaryTree, including the triangles for subtrees that are too
+ * small to draw node by node. The display places nodes by following the
+ * links and keeps the subtree sizes and heights it counted between paints,
+ * so it still shows a broken tree as it is. To avoid counting the whole tree
+ * for each tile, this places nodes by rank and finds heights from balance
+ * codes instead, so the tree must be a correct AVL tree. It must not change
+ * during an export.
+ */
+public final class TreeImageExporter {
+
+	private final double nodeSpacing;
+	private final double levelSpacing;
+	private final int tileSize;
+
+	/**
+	 * @param nodeSpacing
+	 *            pixels between nodes next to each other in order. Below
+	 *            DisplayableBinaryTree.NODE_PIXELS small subtrees are drawn as
+	 *            triangles.
+	 * @param levelSpacing
+	 *            pixels between one level of the tree and the next
+	 * @param tileSize
+	 *            width and height of each tile in pixels
+	 * @throws IllegalArgumentException
+	 *             if any of them is not positive
+	 */
+	public TreeImageExporter(double nodeSpacing, double levelSpacing, int tileSize) {
+		if (!(nodeSpacing > 0) || !(levelSpacing > 0) || tileSize <= 0) {
+			throw new IllegalArgumentException("spacing and tile size must be positive");
+		}
+		this.nodeSpacing = nodeSpacing;
+		this.levelSpacing = levelSpacing;
+		this.tileSize = tileSize;
+	}
+
+	/**
+	 * Writes the tiles of tree into directory, making it if needed. An empty
+	 * tree has no tiles.
+	 *
+	 * @return the number of tiles written
+	 * @throws IOException
+	 *             if the directory can not be made or a tile can not be
+	 *             written
+	 */
+	public int export(EditTree tree, File directory) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("can not make directory " + directory);
+		}
+		if (tree.size() == 0) {
+			return 0;
+		}
+		Picture picture = new Picture(tree, directory);
+		if ((long) picture.rows * picture.columns > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("too many tiles; use a bigger tile size or smaller spacing");
+		}
+		int tiles = picture.rows * picture.columns;
+		try {
+			ForkJoinPool.commonPool().invoke(new TileTask(picture, 0, tiles));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return tiles;
+	}
+
+	/**
+	 * Draws tiles low .. high - 1, counting across each row, splitting the
+	 * range in half until there is one tile left.
+	 */
+	private static class TileTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Picture picture;
+		private final int low;
+		private final int high;
+
+		public TileTask(Picture picture, int low, int high) {
+			this.picture = picture;
+			this.low = low;
+			this.high = high;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.high - this.low == 1) {
+				try {
+					this.picture.writeTile(this.low / this.picture.columns, this.low % this.picture.columns);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				return;
+			}
+			int mid = (this.low + this.high) >>> 1;
+			invokeAll(new TileTask(this.picture, this.low, mid), new TileTask(this.picture, mid, this.high));
+		}
+	}
+
+	/**
+	 * What all the tiles of one export share. Node i of the tree, in order,
+	 * at depth d is centered on (radius + i * nodeSpacing, radius + d *
+	 * levelSpacing).
+	 */
+	private class Picture {
+		private final Node root;
+		private final int size;
+		private final int height;
+		private final File directory;
+		private final double radius;
+		private final double width;
+		private final double depth;
+		private final int rows;
+		private final int columns;
+		private final Font font;
+
+		public Picture(EditTree tree, File directory) {
+			this.root = tree.getRoot();
+			this.size = tree.size();
+			this.height = tree.height();
+			this.directory = directory;
+			this.radius = Math.max(DisplayableBinaryTree.MIN_RADIUS,
+					Math.min(0.625 * TreeImageExporter.this.nodeSpacing, DisplayableBinaryTree.MAX_RADIUS));
+			this.width = 2 * this.radius + (this.size - 1) * TreeImageExporter.this.nodeSpacing;
+			this.depth = 2 * this.radius + this.height * TreeImageExporter.this.levelSpacing;
+			this.columns = (int) Math.ceil(this.width / TreeImageExporter.this.tileSize);
+			this.rows = (int) Math.ceil(this.depth / TreeImageExporter.this.tileSize);
+			Graphics2D g2 = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics();
+			this.font = DisplayableBinaryTree.fitFont(g2, this.radius);
+			g2.dispose();
+		}
+
+		public void writeTile(int row, int column) throws IOException {
+			int tileSize = TreeImageExporter.this.tileSize;
+			// positions are taken relative to the tile in double precision,
+			// since Java2D works in float and the picture can be very wide
+			double originX = (double) column * tileSize;
+			double originY = (double) row * tileSize;
+			int tileWidth = (int) Math.min(tileSize, Math.ceil(this.width - originX));
+			int tileHeight = (int) Math.min(tileSize, Math.ceil(this.depth - originY));
+			BufferedImage image = new BufferedImage(tileWidth, tileHeight, BufferedImage.TYPE_INT_RGB);
+			Graphics2D g2 = image.createGraphics();
+			g2.setColor(DisplayableBinaryTree.BACKGROUND_COLOR);
+			g2.fillRect(0, 0, tileWidth, tileHeight);
+			g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			TreePainter painter = new TreePainter();
+			painter.setFont(g2, this.font);
+			this.paint(g2, painter, new Tile(originX, originY, tileWidth, tileHeight), this.root, 0, this.size - 1,
+					0, this.height);
+			g2.dispose();
+			ImageIO.write(image, "png", new File(this.directory, "tile-" + row + "-" + column + ".png"));
+		}
+
+		/**
+		 * Paints the subtree below node, whose nodes are first .. last in
+		 * order, skipping whatever is outside the tile.
+		 */
+		private void paint(Graphics2D g2, TreePainter painter, Tile tile, Node node, int first, int last, int depth,
+				int height) {
+			int index = first + node.rank;
+			double x = tile.x(index);
+			double y = tile.y(depth);
+			if (tile.x(last) + this.radius < 0 || tile.x(first) - this.radius > tile.width
+					|| y - this.radius > tile.height) {
+				return;
+			}
+			double spacing = TreeImageExporter.this.nodeSpacing;
+			if (spacing < DisplayableBinaryTree.NODE_PIXELS && first != last
+					&& (last - first + 1) * spacing < DisplayableBinaryTree.SUMMARY_PIXELS) {
+				painter.drawSummary(g2, x, y, tile.x(first), tile.x(last), tile.y(depth + height), last - first + 1,
+						height);
+				return;
+			}
+			if (node.left != EditTree.NULL_NODE) {
+				int childHeight = height - ((node.balance == Code.RIGHT) ? 2 : 1);
+				this.paint(g2, painter, tile, node.left, first, index - 1, depth + 1, childHeight);
+				painter.drawFowardArrow(g2, x, y, tile.x(first + node.left.rank), tile.y(depth + 1), this.radius);
+			}
+			if (node.right != EditTree.NULL_NODE) {
+				int childHeight = height - ((node.balance == Code.LEFT) ? 2 : 1);
+				this.paint(g2, painter, tile, node.right, index + 1, last, depth + 1, childHeight);
+				painter.drawFowardArrow(g2, x, y, tile.x(index + 1 + node.right.rank), tile.y(depth + 1),
+						this.radius);
+			}
+			painter.drawNode(g2, node, x, y, this.radius);
+		}
+
+		/**
+		 * Where one tile sits in the picture.
+		 */
+		private class Tile {
+			private final double originX;
+			private final double originY;
+			private final int width;
+			private final int height;
+
+			public Tile(double originX, double originY, int width, int height) {
+				this.originX = originX;
+				this.originY = originY;
+				this.width = width;
+				this.height = height;
+			}
+
+			public double x(int index) {
+				return Picture.this.radius + index * TreeImageExporter.this.nodeSpacing - this.originX;
+			}
+
+			public double y(int depth) {
+				return Picture.this.radius + depth * TreeImageExporter.this.levelSpacing - this.originY;
+			}
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+/**
+ * Tests for TreeImageExporter. These only check the tiles that come out, not
+ * how the tree looks in them.
+ */
+public class TreeImageExporterTest {
+
+	private File temporaryDirectory() throws IOException {
+		File directory = File.createTempFile("tiles", "");
+		assertTrue(directory.delete());
+		return directory;
+	}
+
+	private void deleteAll(File directory) {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	private boolean hasDrawing(BufferedImage image) {
+		int background = DisplayableBinaryTree.BACKGROUND_COLOR.getRGB();
+		for (int y = 0; y < image.getHeight(); y++) {
+			for (int x = 0; x < image.getWidth(); x++) {
+				if (image.getRGB(x, y) != background) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	@Test
+	public void testTilesCoverTheTree() throws IOException {
+		// 26 nodes of height 4. Circles have radius 25, so the picture is
+		// 50 + 25 * 40 = 1050 by 50 + 4 * 60 = 290 pixels.
+		EditTree t = new EditTree("abcdefghijklmnopqrstuvwxyz");
+		File directory = temporaryDirectory();
+		try {
+			assertEquals(10, new TreeImageExporter(40, 60, 256).export(t, directory));
+			assertEquals(10, directory.listFiles().length);
+			BufferedImage first = ImageIO.read(new File(directory, "tile-0-0.png"));
+			assertEquals(256, first.getWidth());
+			assertEquals(256, first.getHeight());
+			assertTrue(hasDrawing(first));
+			BufferedImage last = ImageIO.read(new File(directory, "tile-1-4.png"));
+			assertEquals(1050 - 4 * 256, last.getWidth());
+			assertEquals(290 - 256, last.getHeight());
+		} finally {
+			deleteAll(directory);
+		}
+	}
+
+	@Test
+	public void testLargeTreeUsesFewTiles() throws IOException {
+		// At 0.01 pixels per node subtrees are drawn as triangles, and the
+		// 100000 nodes fit across four tiles.
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			text.append((char) ('a' + i % 26));
+		}
+		EditTree t = new EditTree(text);
+		File directory = temporaryDirectory();
+		try {
+			int tiles = new TreeImageExporter(0.01, 20, 256).export(t, directory);
+			int rows = (int) Math.ceil((6 + 20.0 * t.height()) / 256);
+			assertEquals(4 * rows, tiles);
+			assertEquals(tiles, directory.listFiles().length);
+			assertTrue(hasDrawing(ImageIO.read(new File(directory, "tile-0-1.png"))));
+		} finally {
+			deleteAll(directory);
+		}
+	}
+
+	@Test
+	public void testEmptyTreeAndBadArguments() throws IOException {
+		File directory = temporaryDirectory();
+		try {
+			assertEquals(0, new TreeImageExporter(20, 20, 256).export(new EditTree(), directory));
+			assertTrue(directory.isDirectory());
+		} finally {
+			deleteAll(directory);
+		}
+		try {
+			new TreeImageExporter(0, 20, 256);
+			fail("Did not throw IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// success
+		}
+		try {
+			new TreeImageExporter(20, 20, 0);
+			fail("Did not throw IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// success
+		}
+	}
+}
@@ -0,0 +1,370 @@
+package editortrees;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Draws the nodes, arrows and subtree triangles for DisplayableBinaryTree and
+ * TreeImageExporter. The shapes and the buffer that numbers are written into
+ * are kept and reused from one call to the next, so once the fonts are set a
+ * frame allocates nothing here. Each thread that paints needs its own.
+ */
+final class TreePainter {
+	private static final Color CIRCLE_COLOR = Color.WHITE;
+	// lightish green to keep in line with our stormy color scheme
+	private static final Color TEXT_COLOR = new Color(0x66FFB2);
+	// circles smaller than this are drawn without their text
+	private static final double MIN_TEXT_RADIUS = 6;
+
+	private final ReusableShape shape = new ReusableShape();
+	// numbers are written into the end of this, so no Strings are made
+	private final char[] text = new char[32];
+	private Font font;
+	private FontMetrics metrics;
+	private FontMetrics summaryMetrics;
+
+	/**
+	 * Sets the font used for the text in the nodes. The font of g2 is only
+	 * changed when there is text to draw, since each change costs an
+	 * allocation on the next text drawn, and a frame usually has either node
+	 * text or summary labels, not both.
+	 */
+	public void setFont(Graphics2D g2, Font font) {
+		if (font != this.font) {
+			this.font = font;
+			this.metrics = g2.getFontMetrics(font);
+		}
+	}
+
+	/**
+	 * Draws node as a circle of the given radius centered on (x, y), with its
+	 * rank, balance code and element inside.
+	 */
+	public void drawNode(Graphics2D g2, Node node, double x, double y, double radius) {
+		// sets the circle outline color
+		g2.setColor(CIRCLE_COLOR);
+		this.shape.circle(x, y, radius);
+		g2.draw(this.shape);
+		if (radius < MIN_TEXT_RADIUS) {
+			return;
+		}
+		// sets the text color
+		g2.setColor(TEXT_COLOR);
+		if (g2.getFont() != this.font) {
+			g2.setFont(this.font);
+		}
+		// the text is centered on x, and these fractions of a line above and
+		// below y just look right
+		double lineHeight = this.metrics.getHeight();
+		int end = this.text.length;
+		this.drawCentered(g2, this.metrics, this.writeNumber(node.getRank(), end), end, x, y - lineHeight / 3);
+		String balance = (node.getBalance() == null) ? "null" : node.getBalance().toString();
+		g2.drawString(balance, (int) (x - this.metrics.stringWidth(balance) / 2.0), (int) (y + lineHeight / 4));
+		this.text[end - 1] = node.getElement();
+		this.drawCentered(g2, this.metrics, end - 1, end, x, y + 5 * lineHeight / 6);
+	}
+
+	/**
+	 * Draws an arrow from the circle around (startX, startY) to the circle
+	 * around (endX, endY).
+	 */
+	public void drawFowardArrow(Graphics2D g2, double startX, double startY, double endX, double endY,
+			double circleRadius) {
+		g2.setColor(DisplayableBinaryTree.FOWARD_ARROW_COLOR);
+		// distance is from edge to edge
+		double arrowLength = Point2D.distance(startX, startY, endX, endY) - 2 * circleRadius;
+		double arrowLengthSqrt = Math.sqrt(arrowLength); // scales better with the sqrt
+		this.drawArrow(g2, startX, startY, endX, endY, circleRadius, arrowLength, arrowLengthSqrt,
+				2 * arrowLengthSqrt);
+	}
+
+	/**
+	 * Draws the arrow from a child around (childX, childY) back to its parent
+	 * around (parentX, parentY). Only the head is drawn when the parent does
+	 * not link back to the child.
+	 */
+	public void drawParentArrow(Graphics2D g2, double childX, double childY, double parentX, double parentY,
+			double circleRadius, boolean linked) {
+		g2.setColor(DisplayableBinaryTree.PARENT_ARROW_COLOR);
+		double SIZE_MULTIPLIER = 1.5;
+		double arrowLength = Point2D.distance(childX, childY, parentX, parentY) - 2 * circleRadius;
+		double arrowLengthSqrt = Math.sqrt(arrowLength);
+		this.drawArrow(g2, childX, childY, parentX, parentY, circleRadius,
+				linked ? arrowLength - 2 * arrowLengthSqrt : 0, arrowLengthSqrt / SIZE_MULTIPLIER,
+				2 * arrowLengthSqrt / SIZE_MULTIPLIER);
+	}
+
+	/**
+	 * Draws an arrow whose point touches the circle around (endX, endY), with
+	 * a line of lineLength going back from the point toward (startX, startY)
+	 * and a head halfWidth to each side and headLength long.
+	 */
+	private void drawArrow(Graphics2D g2, double startX, double startY, double endX, double endY,
+			double circleRadius, double lineLength, double halfWidth, double headLength) {
+		double distance = Point2D.distance(startX, startY, endX, endY);
+		// one pixel along the arrow, from its point back toward the start
+		double dx = (startX - endX) / distance;
+		double dy = (startY - endY) / distance;
+		double pointX = endX + dx * circleRadius;
+		double pointY = endY + dy * circleRadius;
+		if (lineLength > 0) {
+			this.shape.line(pointX, pointY, pointX + dx * lineLength, pointY + dy * lineLength);
+			g2.draw(this.shape);
+		}
+		double backX = pointX + dx * headLength;
+		double backY = pointY + dy * headLength;
+		this.shape.triangle(pointX, pointY, backX - dy * halfWidth, backY + dx * halfWidth, backX + dy * halfWidth,
+				backY - dx * halfWidth);
+		g2.fill(this.shape);
+	}
+
+	/**
+	 * Draws a whole subtree as a triangle from its root at (x, top) down to
+	 * its deepest level, labeled with its size and height when the label
+	 * fits.
+	 */
+	public void drawSummary(Graphics2D g2, double x, double top, double left, double right, double bottom, int size,
+			int height) {
+		this.shape.triangle(x, top, left, bottom, right, bottom);
+		g2.setColor(DisplayableBinaryTree.SUMMARY_COLOR);
+		g2.fill(this.shape);
+		g2.setColor(DisplayableBinaryTree.FOWARD_ARROW_COLOR);
+		g2.draw(this.shape);
+
+		// "size hheight"
+		int end = this.text.length;
+		int start = this.writeNumber(height, end);
+		this.text[--start] = 'h';
+		this.text[--start] = ' ';
+		start = this.writeNumber(size, start);
+		if (this.summaryMetrics == null) {
+			this.summaryMetrics = g2.getFontMetrics(DisplayableBinaryTree.SUMMARY_FONT);
+		}
+		int width = this.summaryMetrics.charsWidth(this.text, start, end - start);
+		if (width < right - left) {
+			if (g2.getFont() != DisplayableBinaryTree.SUMMARY_FONT) {
+				g2.setFont(DisplayableBinaryTree.SUMMARY_FONT);
+			}
+			g2.setColor(Color.WHITE);
+			g2.drawChars(this.text, start, end - start, (int) ((left + right - width) / 2), (int) bottom - 2);
+		}
+	}
+
+	private void drawCentered(Graphics2D g2, FontMetrics metrics, int start, int end, double x, double y) {
+		int width = metrics.charsWidth(this.text, start, end - start);
+		g2.drawChars(this.text, start, end - start, (int) (x - width / 2.0), (int) y);
+	}
+
+	/**
+	 * Writes value in decimal into text, ending just before end.
+	 *
+	 * @return where it starts
+	 */
+	private int writeNumber(int value, int end) {
+		long rest = Math.abs((long) value);
+		do {
+			this.text[--end] = (char) ('0' + rest % 10);
+			rest /= 10;
+		} while (rest > 0);
+		if (value < 0) {
+			this.text[--end] = '-';
+		}
+		return end;
+	}
+
+	/**
+	 * A line, circle or triangle that is set again before each use. Java2D asks
+	 * every shape it draws for a PathIterator, and Ellipse2D and Path2D make
+	 * a new one each time, so this is its own iterator instead. Only one
+	 * iteration can be going on at a time, which is all Graphics2D needs.
+	 */
+	private static class ReusableShape implements Shape, PathIterator {
+		// how far the control points of a quarter circle are from its ends,
+		// as a fraction of the radius
+		private static final double CONTROL = 0.5522847498307933;
+
+		// room for a move and four curves
+		private final double[] coords = new double[26];
+		private final int[] types = new int[6];
+		private int segments;
+		private int segment;
+		private int coord;
+		private AffineTransform transform;
+
+		public void circle(double x, double y, double r) {
+			double c = CONTROL * r;
+			this.moveTo(x + r, y);
+			this.curveTo(x + r, y + c, x + c, y + r, x, y + r);
+			this.curveTo(x - c, y + r, x - r, y + c, x - r, y);
+			this.curveTo(x - r, y - c, x - c, y - r, x, y - r);
+			this.curveTo(x + c, y - r, x + r, y - c, x + r, y);
+			this.closePath();
+		}
+
+		/**
+		 * Graphics2D draws a Line2D with antialiasing in time that grows with
+		 * its length even when most of it is outside the window, and arrows
+		 * to nodes far off screen can be millions of pixels long. As a path
+		 * it is clipped first.
+		 */
+		public void line(double x0, double y0, double x1, double y1) {
+			this.moveTo(x0, y0);
+			this.lineTo(x1, y1);
+		}
+
+		public void triangle(double x0, double y0, double x1, double y1, double x2, double y2) {
+			this.moveTo(x0, y0);
+			this.lineTo(x1, y1);
+			this.lineTo(x2, y2);
+			this.closePath();
+		}
+
+		// starts the shape over
+		private void moveTo(double x, double y) {
+			this.segments = 0;
+			this.coord = 0;
+			this.types[this.segments++] = SEG_MOVETO;
+			this.point(x, y);
+		}
+
+		private void lineTo(double x, double y) {
+			this.types[this.segments++] = SEG_LINETO;
+			this.point(x, y);
+		}
+
+		private void curveTo(double x0, double y0, double x1, double y1, double x2, double y2) {
+			this.types[this.segments++] = SEG_CUBICTO;
+			this.point(x0, y0);
+			this.point(x1, y1);
+			this.point(x2, y2);
+		}
+
+		private void closePath() {
+			this.types[this.segments++] = SEG_CLOSE;
+		}
+
+		private void point(double x, double y) {
+			this.coords[this.coord++] = x;
+			this.coords[this.coord++] = y;
+		}
+
+		private static int points(int type) {
+			switch (type) {
+			case SEG_MOVETO:
+			case SEG_LINETO:
+				return 1;
+			case SEG_CUBICTO:
+				return 3;
+			default:
+				return 0;
+			}
+		}
+
+		@Override
+		public PathIterator getPathIterator(AffineTransform at) {
+			this.transform = at;
+			this.segment = 0;
+			this.coord = 0;
+			return this;
+		}
+
+		@Override
+		public PathIterator getPathIterator(AffineTransform at, double flatness) {
+			return new Path2D.Double(this).getPathIterator(at, flatness);
+		}
+
+		@Override
+		public int getWindingRule() {
+			return WIND_NON_ZERO;
+		}
+
+		@Override
+		public boolean isDone() {
+			return this.segment >= this.segments;
+		}
+
+		@Override
+		public void next() {
+			this.coord += points(this.types[this.segment]) * 2;
+			this.segment++;
+		}
+
+		@Override
+		public int currentSegment(double[] coords) {
+			int type = this.types[this.segment];
+			int points = points(type);
+			if (this.transform == null) {
+				System.arraycopy(this.coords, this.coord, coords, 0, points * 2);
+			} else {
+				this.transform.transform(this.coords, this.coord, coords, 0, points);
+			}
+			return type;
+		}
+
+		@Override
+		public int currentSegment(float[] coords) {
+			int type = this.types[this.segment];
+			int points = points(type);
+			if (this.transform == null) {
+				for (int i = 0; i < points * 2; i++) {
+					coords[i] = (float) this.coords[this.coord + i];
+				}
+			} else {
+				this.transform.transform(this.coords, this.coord, coords, 0, points);
+			}
+			return type;
+		}
+
+		// The rest of Shape is not used when drawing, so it goes through a
+		// copy of the path.
+
+		@Override
+		public Rectangle getBounds() {
+			return new Path2D.Double(this).getBounds();
+		}
+
+		@Override
+		public Rectangle2D getBounds2D() {
+			return new Path2D.Double(this).getBounds2D();
+		}
+
+		@Override
+		public boolean contains(double x, double y) {
+			return new Path2D.Double(this).contains(x, y);
+		}
+
+		@Override
+		public boolean contains(Point2D p) {
+			return new Path2D.Double(this).contains(p);
+		}
+
+		@Override
+		public boolean intersects(double x, double y, double w, double h) {
+			return new Path2D.Double(this).intersects(x, y, w, h);
+		}
+
+		@Override
+		public boolean intersects(Rectangle2D r) {
+			return new Path2D.Double(this).intersects(r);
+		}
+
+		@Override
+		public boolean contains(double x, double y, double w, double h) {
+			return new Path2D.Double(this).contains(x, y, w, h);
+		}
+
+		@Override
+		public boolean contains(Rectangle2D r) {
+			return new Path2D.Double(this).contains(r);
+		}
+	}
+}